@@ -15,6 +15,7 @@
  */
 package de.mhus.lib.vaadin;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -28,6 +29,7 @@ import com.vaadin.ui.Panel;
 import com.vaadin.ui.UI;
 import com.vaadin.ui.VerticalLayout;
 import com.vaadin.ui.VerticalSplitPanel;
+import com.vaadin.v7.data.Item;
 import com.vaadin.v7.data.Property;
 import com.vaadin.v7.data.Property.ValueChangeEvent;
 import com.vaadin.v7.event.ItemClickEvent;
@@ -45,6 +47,8 @@ import de.mhus.lib.core.util.MNls;
 import de.mhus.lib.core.util.MNlsBundle;
 import de.mhus.lib.core.util.MNlsProvider;
 import de.mhus.lib.form.MutableMForm;
+import de.mhus.lib.vaadin.container.LazyPagedContainer;
+import de.mhus.lib.vaadin.container.PagedDataProvider;
 import de.mhus.lib.vaadin.form.VaadinPojoForm;
 import de.mhus.lib.vaadin.form.VaadinUiInformation;
 
@@ -107,7 +111,13 @@ public abstract class AbstractListEditor<E> extends VerticalLayout implements MN
         table.setMultiSelect(false);
         table.setImmediate(true);
         table.setSizeFull();
-        table.createDataSource(createColumnDefinitions());
+        PagedDataProvider<E> provider = createDataProvider();
+        if (provider == null) {
+            table.createDataSource(createColumnDefinitions());
+        } else {
+            ColumnDefinition[] columns = createColumnDefinitions();
+            table.createDataSource(createLazyContainer(provider, columns), columns);
+        }
         fillDataSource(new FilterRequest(""));
 
         table.addValueChangeListener(
@@ -138,7 +148,8 @@ public abstract class AbstractListEditor<E> extends VerticalLayout implements MN
                         if (name.equals(sortedColumn)) sortedAscending = !sortedAscending;
                         else sortedAscending = true;
                         sortedColumn = name;
-                        if (needSortUpdate) updateDataSource();
+                        // a lazy container sorts by the provider
+                        if (needSortUpdate && !table.isLazy()) updateDataSource();
                     }
                 });
 
@@ -544,7 +555,43 @@ public abstract class AbstractListEditor<E> extends VerticalLayout implements MN
         return true;
     }
 
+    /**
+     * Overwrite this to load the rows page by page. The provider must sort and filter the rows, in
+     * this case createDataList is not used.
+     *
+     * @return The provider or null to load all rows with createDataList
+     */
+    protected PagedDataProvider<E> createDataProvider() {
+        return null;
+    }
+
+    protected LazyPagedContainer<E> createLazyContainer(
+            PagedDataProvider<E> provider, ColumnDefinition[] columns) {
+        LazyPagedContainer<E> container =
+                new LazyPagedContainer<E>(provider) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected Item createItem(E row) {
+                        return table.createRowItem(getValues(row));
+                    }
+
+                    @Override
+                    protected Object getItemId(E row) {
+                        return getId(row);
+                    }
+                };
+        for (ColumnDefinition column : columns)
+            container.addContainerProperty(
+                    column.getId(), column.getType(), column.getDefaultValue());
+        return container;
+    }
+
     protected void fillDataSource(FilterRequest filter) {
+        if (table.isLazy()) {
+            table.getLazyDataSource().setFilter(filter);
+            return;
+        }
         try {
             table.removeAllItems();
             for (E entity : createDataList(filter)) {
@@ -562,21 +609,35 @@ public abstract class AbstractListEditor<E> extends VerticalLayout implements MN
     protected abstract List<E> createDataList(FilterRequest filter);
 
     public void updateDataSource() {
+        if (table.isLazy()) {
+            table.getLazyDataSource().setFilter(filter.createFilterRequest());
+            return;
+        }
+        boolean changed = false;
+        table.beginUpdate();
         try {
-            LinkedList<Object> newIds = new LinkedList<Object>();
+            HashSet<Object> newIds = new HashSet<Object>();
             for (E entity : createDataList(filter.createFilterRequest())) {
                 Object id = getId(entity);
                 Object[] values = getValues(entity);
-                if (!table.updateRow(id, values)) table.addRow(id, values);
                 newIds.add(id);
+                // unchanged rows are not touched, the client gets no update for them
+                if (table.isRowEqual(id, values)) continue;
+                if (!table.updateRow(id, values)) table.addRow(id, values);
+                changed = true;
             }
 
-            for (Object id : new LinkedList<Object>(table.getItemIds())) {
-                if (!newIds.contains(id)) table.removeItem(id);
+            LinkedList<Object> removed = new LinkedList<Object>();
+            for (Object id : table.getItemIds()) {
+                if (!newIds.contains(id)) removed.add(id);
             }
+            for (Object id : removed) table.removeItem(id);
+            if (!removed.isEmpty()) changed = true;
 
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            table.endUpdate(changed);
         }
     }
 
@@ -15,20 +15,39 @@
  */
 package de.mhus.lib.vaadin;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.Objects;
 
 import com.vaadin.v7.data.Container;
 import com.vaadin.v7.data.Item;
+import com.vaadin.v7.data.Property;
 import com.vaadin.v7.data.util.IndexedContainer;
+import com.vaadin.v7.data.util.ObjectProperty;
+import com.vaadin.v7.data.util.PropertysetItem;
 
 import de.mhus.lib.core.logging.MLogUtil;
+import de.mhus.lib.vaadin.container.LazyPagedContainer;
 
 @SuppressWarnings("deprecation")
 public class SimpleTable extends ExpandingTable {
 
     private static final long serialVersionUID = 1L;
     private IndexedContainer dataSource;
+    private LazyPagedContainer<?> lazyDataSource;
     private ColumnDefinition[] columns;
+
+    /** Keeps the selected rows of a lazy data source if their page is dropped. */
+    private final Property.ValueChangeListener pinSelection =
+            new Property.ValueChangeListener() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void valueChange(Property.ValueChangeEvent event) {
+                    if (lazyDataSource != null) lazyDataSource.setPinnedIds(getSelectedIds());
+                }
+            };
     // protected MProperties status = new MProperties();
 
     public SimpleTable() {}
@@ -50,29 +69,91 @@ public class SimpleTable extends ExpandingTable {
     }
 
     public void createDataSource(ColumnDefinition... columns) {
-        this.columns = columns;
         dataSource = new IndexedContainer();
+        lazyDataSource = null;
+        removeValueChangeListener(pinSelection);
+        for (ColumnDefinition column : columns)
+            dataSource.addContainerProperty(
+                    column.getId(), column.getType(), column.getDefaultValue());
+        initColumns(dataSource, columns);
+    }
+
+    /**
+     * Use a container loading the rows on demand. The rows can't be changed by addRow, updateRow
+     * and removeRow, refresh the container instead. The selected rows are pinned in the container,
+     * so they stay selected if their page is dropped.
+     *
+     * @param container The container, it must provide all columns
+     * @param columns
+     */
+    public void createDataSource(LazyPagedContainer<?> container, ColumnDefinition... columns) {
+        dataSource = null;
+        lazyDataSource = container;
+        initColumns(container, columns);
+        removeValueChangeListener(pinSelection);
+        addValueChangeListener(pinSelection);
+        container.setPinnedIds(getSelectedIds());
+    }
+
+    private Collection<?> getSelectedIds() {
+        Object value = getValue();
+        if (value == null) return Collections.emptyList();
+        if (value instanceof Collection) return (Collection<?>) value;
+        return Collections.singletonList(value);
+    }
+
+    private void initColumns(Container container, ColumnDefinition... columns) {
+        this.columns = columns;
         LinkedList<Object> columnList = new LinkedList<>();
         LinkedList<Object> colapsedByDefault = new LinkedList<>();
         for (ColumnDefinition column : columns) {
-            dataSource.addContainerProperty(
-                    column.getId(), column.getType(), column.getDefaultValue());
             setColumnHeader(column.getId(), column.getTitle());
             if (!column.isShowByDefault()) colapsedByDefault.add(column.getId());
             columnList.add(column.getId());
         }
 
-        setContainerDataSource(dataSource);
+        setContainerDataSource(container);
 
         setVisibleColumns(columnList.toArray(new Object[colapsedByDefault.size()]));
 
         for (Object col : colapsedByDefault) setColumnCollapsed(col, true);
     }
 
+    /**
+     * Create a read only item for a row of a lazy data source.
+     *
+     * @param values Values in the order of the columns
+     * @return The item
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Item createRowItem(Object[] values) {
+        PropertysetItem item = new PropertysetItem();
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values.length > i ? values[i] : columns[i].getDefaultValue();
+            item.addItemProperty(
+                    columns[i].getId(), new ObjectProperty(value, columns[i].getType(), true));
+        }
+        return item;
+    }
+
+    /**
+     * Return the in memory data source.
+     *
+     * @return The container or null if a lazy data source is used, see {@link
+     *     #getLazyDataSource()}
+     */
     public IndexedContainer getDataSource() {
         return dataSource;
     }
 
+    public LazyPagedContainer<?> getLazyDataSource() {
+        return lazyDataSource;
+    }
+
+    public boolean isLazy() {
+        return lazyDataSource != null;
+    }
+
     public ColumnDefinition[] getColumns() {
         return columns;
     }
@@ -83,6 +164,10 @@ public class SimpleTable extends ExpandingTable {
             MLogUtil.log().d("addRow: id is null", this.getClass());
             return;
         }
+        if (dataSource == null) {
+            MLogUtil.log().d("addRow: lazy data source", this.getClass(), id);
+            return;
+        }
         Item item = dataSource.addItem(id);
         if (item == null) {
             MLogUtil.log().d("addRow: item is null", this.getClass(), id);
@@ -98,18 +183,64 @@ public class SimpleTable extends ExpandingTable {
         }
     }
 
+    /**
+     * Update the values of a row. Only changed cells are written.
+     *
+     * @param id
+     * @param values
+     * @return false if the row not exists
+     */
     @SuppressWarnings("unchecked")
     public boolean updateRow(Object id, Object[] values) {
+        if (dataSource == null) return false;
         Item item = dataSource.getItem(id);
         if (item == null) return false;
         for (int i = 0; i < columns.length; i++) {
-            item.getItemProperty(columns[i].getId())
-                    .setValue(values.length > i ? values[i] : columns[i].getDefaultValue());
+            Object value = values.length > i ? values[i] : columns[i].getDefaultValue();
+            Property<Object> property = item.getItemProperty(columns[i].getId());
+            if (!Objects.equals(property.getValue(), value)) property.setValue(value);
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the row exists and shows the values.
+     *
+     * @param id
+     * @param values
+     * @return true if nothing has to be updated
+     */
+    public boolean isRowEqual(Object id, Object[] values) {
+        if (dataSource == null) return false;
+        Item item = dataSource.getItem(id);
+        if (item == null) return false;
+        for (int i = 0; i < columns.length; i++) {
+            Object value = values.length > i ? values[i] : columns[i].getDefaultValue();
+            if (!Objects.equals(item.getItemProperty(columns[i].getId()).getValue(), value))
+                return false;
         }
         return true;
     }
 
+    /**
+     * Stop refreshing the rendered rows until endUpdate is called. Use it to change a lot of rows
+     * at once.
+     */
+    public void beginUpdate() {
+        disableContentRefreshing();
+    }
+
+    /**
+     * Enable refreshing of the rendered rows again.
+     *
+     * @param changed true if rows were changed since beginUpdate
+     */
+    public void endUpdate(boolean changed) {
+        enableContentRefreshing(changed);
+    }
+
     public void removeRow(Object id) {
+        if (dataSource == null) return;
         dataSource.removeItem(id);
     }
 }
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.container;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import de.mhus.lib.core.pojo.PojoAttribute;
+
+/**
+ * Direct access to a bean property by method handles, created once per property and class, so
+ * the getter and setter methods are not looked up again for every item.
+ *
+ * <p>The accessor only covers plain getter and setter methods. For all other attributes (fields,
+ * nested attributes) {@link #create(Class, PojoAttribute)} returns null and the attribute must be
+ * used.
+ */
+public final class BeanAccessor {
+
+    private static final MethodType OBJECT_GETTER =
+            MethodType.methodType(Object.class, Object.class);
+    private static final MethodType OBJECT_SETTER =
+            MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<?> type;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+
+    private BeanAccessor(Class<?> type, MethodHandle getter, MethodHandle setter) {
+        this.type = type;
+        this.getter = getter.asType(OBJECT_GETTER);
+        this.setter = setter == null ? null : setter.asType(OBJECT_SETTER);
+    }
+
+    /**
+     * Create the accessor for the attribute.
+     *
+     * @param beanClass
+     * @param attr
+     * @return The accessor or null if the attribute is not a plain getter/setter pair
+     */
+    public static BeanAccessor create(Class<?> beanClass, PojoAttribute<?> attr) {
+        Method get = findGetter(beanClass, attr.getName());
+        if (get == null || get.getReturnType() != attr.getType()) return null;
+        Method set = findSetter(beanClass, attr.getName(), get.getReturnType());
+        try {
+            MethodHandle getHandle = unreflect(get);
+            MethodHandle setHandle = set == null ? null : unreflect(set);
+            return new BeanAccessor(get.getReturnType(), getHandle, setHandle);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        if (!Modifier.isPublic(method.getDeclaringClass().getModifiers()))
+            method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    private static Method findGetter(Class<?> beanClass, String name) {
+        for (Method method : beanClass.getMethods()) {
+            if (method.getParameterTypes().length != 0
+                    || method.getReturnType() == void.class
+                    || Modifier.isStatic(method.getModifiers())) continue;
+            String n = method.getName();
+            if (n.length() == 3 + name.length()
+                    && n.startsWith("get")
+                    && n.regionMatches(true, 3, name, 0, name.length())) return method;
+            if (n.length() == 2 + name.length()
+                    && n.startsWith("is")
+                    && method.getReturnType() == boolean.class
+                    && n.regionMatches(true, 2, name, 0, name.length())) return method;
+        }
+        return null;
+    }
+
+    private static Method findSetter(Class<?> beanClass, String name, Class<?> type) {
+        for (Method method : beanClass.getMethods()) {
+            Class<?>[] params = method.getParameterTypes();
+            if (params.length != 1
+                    || params[0] != type
+                    || Modifier.isStatic(method.getModifiers())) continue;
+            String n = method.getName();
+            if (n.length() == 3 + name.length()
+                    && n.startsWith("set")
+                    && n.regionMatches(true, 3, name, 0, name.length())) return method;
+        }
+        return null;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Object get(Object bean) throws IOException {
+        try {
+            return (Object) getter.invokeExact(bean);
+        } catch (Throwable t) {
+            throw wrap(t);
+        }
+    }
+
+    /**
+     * Return true if the value can be set without conversion. Other values must be set by the
+     * attribute, it could convert the value.
+     *
+     * @param value
+     * @return true if {@link #set(Object, Object)} can be used
+     */
+    public boolean canSet(Object value) {
+        if (setter == null) return false;
+        if (value == null) return !type.isPrimitive();
+        return wrapper(type).isInstance(value);
+    }
+
+    public void set(Object bean, Object value) throws IOException {
+        try {
+            setter.invokeExact(bean, value);
+        } catch (Throwable t) {
+            throw wrap(t);
+        }
+    }
+
+    private static Class<?> wrapper(Class<?> type) {
+        if (!type.isPrimitive()) return type;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == float.class) return Float.class;
+        if (type == short.class) return Short.class;
+        if (type == byte.class) return Byte.class;
+        return Character.class;
+    }
+
+    private static IOException wrap(Throwable t) {
+        // like reflection, exceptions of the bean are reported as IOException by the attribute
+        if (t instanceof Error) throw (Error) t;
+        if (t instanceof IOException) return (IOException) t;
+        return new IOException(t);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.container;
+
+import java.util.Map;
+
+import com.vaadin.v7.data.Item;
+
+import de.mhus.lib.vaadin.container.MhuBeanItem.PojoPropertyDescriptor;
+
+/**
+ * A {@link LazyPagedContainer} for beans. The properties of the bean class are the properties of
+ * the container, the rows are shown by bean items.
+ *
+ * @param <T> Type of the beans
+ */
+@SuppressWarnings({"serial", "deprecation"})
+public class LazyBeanContainer<T> extends LazyPagedContainer<T> {
+
+    private final Map<String, PojoPropertyDescriptor<T>> descriptors;
+
+    public LazyBeanContainer(Class<T> beanClass, PagedDataProvider<T> provider) {
+        super(provider);
+        descriptors = MhuBeanItem.getSharedPropertyDescriptors(beanClass);
+        for (PojoPropertyDescriptor<T> pd : descriptors.values())
+            super.addContainerProperty(pd.getName(), pd.getPropertyType(), null);
+    }
+
+    @Override
+    protected Item createItem(T row) {
+        return new MhuBeanItem<T>(row, descriptors);
+    }
+
+    /** The properties are defined by the bean class. */
+    @Override
+    public boolean addContainerProperty(Object propertyId, Class<?> type, Object defaultValue)
+            throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+}
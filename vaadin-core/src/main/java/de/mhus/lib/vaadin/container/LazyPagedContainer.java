@@ -0,0 +1,459 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.container;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.v7.data.Container;
+import com.vaadin.v7.data.Item;
+import com.vaadin.v7.data.Property;
+import com.vaadin.v7.data.util.AbstractContainer;
+
+import de.mhus.lib.core.logging.Log;
+import de.mhus.lib.core.util.FilterRequest;
+
+/**
+ * A read only container loading the rows page by page from a {@link PagedDataProvider}. Only a
+ * bounded number of pages is hold in memory, the least recently used page is dropped first. Sorting
+ * and filtering is passed to the provider, so a table can show huge result sets without loading
+ * them.
+ *
+ * <p>The items are created by {@link #createItem(Object)}, use {@link LazyBeanContainer} for rows
+ * shown as beans. The item ids are the rows itself by default, overwrite {@link
+ * #getItemId(Object)} to use a key of the row. Ids of rows not loaded are resolved by {@link
+ * PagedDataProvider#indexOf(Object, Object[], boolean[], FilterRequest)}. If the provider does not
+ * support it, {@link #containsId(Object)}, {@link #getItem(Object)} and {@link #indexOfId(Object)}
+ * only know the loaded pages and the pinned ids, see {@link #setPinnedIds(Collection)}. Navigation
+ * with {@link #nextItemId(Object)} or selecting a row not loaded is not possible in this case.
+ *
+ * <p>{@link #getItemIds()} is not supported, it would load all rows. Use {@link
+ * #getItemIds(int, int)} instead.
+ *
+ * @param <T> Type of the rows
+ */
+@SuppressWarnings({"serial", "deprecation"})
+public abstract class LazyPagedContainer<T> extends AbstractContainer
+        implements Container.Indexed, Container.Sortable, Container.ItemSetChangeNotifier {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGES = 10;
+
+    private static final Log log = Log.getLog(LazyPagedContainer.class);
+
+    private final PagedDataProvider<T> provider;
+    private final LinkedHashMap<Object, Class<?>> propertyTypes =
+            new LinkedHashMap<Object, Class<?>>();
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int maxPages = DEFAULT_MAX_PAGES;
+    private FilterRequest filter;
+    private Object[] sortPropertyIds = new Object[0];
+    private boolean[] sortAscending = new boolean[0];
+
+    /** Number of rows, -1 if not counted yet. */
+    private int size = -1;
+
+    /** Index of the rows in the loaded pages. */
+    private final HashMap<Object, Integer> loadedIds = new HashMap<Object, Integer>();
+
+    /** Ids kept independent of the loaded pages. */
+    private final HashSet<Object> pinnedIds = new HashSet<Object>();
+
+    /** Last loaded item of the pinned ids. */
+    private final HashMap<Object, Item> pinnedItems = new HashMap<Object, Item>();
+
+    private final LinkedHashMap<Integer, Page> pages =
+            new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                    if (size() <= maxPages) return false;
+                    for (Object id : eldest.getValue().ids) loadedIds.remove(id);
+                    return true;
+                }
+            };
+
+    /**
+     * Create a container for rows defined by the properties added with {@link
+     * #addContainerProperty(Object, Class, Object)}.
+     *
+     * @param provider
+     */
+    public LazyPagedContainer(PagedDataProvider<T> provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Create the item for a loaded row.
+     *
+     * @param row
+     * @return The item
+     */
+    protected abstract Item createItem(T row);
+
+    /**
+     * Return the id of a row. The id must be unique in the result set.
+     *
+     * @param row
+     * @return The id, by default the row itself
+     */
+    protected Object getItemId(T row) {
+        return row;
+    }
+
+    /**
+     * Set the filter and reload the rows.
+     *
+     * @param filter The filter or null
+     */
+    public void setFilter(FilterRequest filter) {
+        this.filter = filter;
+        refresh();
+    }
+
+    public FilterRequest getFilter() {
+        return filter;
+    }
+
+    /**
+     * Keep the items of the ids even if their page is dropped or the container is refreshed. Ids
+     * not loaded at the moment are kept as soon as their page is loaded. The pinned items are
+     * replaced if the page is loaded again.
+     *
+     * @param ids The ids to keep, replaces the current ids, null or empty to release all
+     */
+    public void setPinnedIds(Collection<?> ids) {
+        pinnedIds.clear();
+        if (ids != null)
+            for (Object id : ids) if (id != null) pinnedIds.add(id);
+        pinnedItems.keySet().retainAll(pinnedIds);
+        for (Object id : pinnedIds) {
+            Integer index = loadedIds.get(id);
+            if (index != null) pinnedItems.put(id, getLoadedItem(index));
+        }
+    }
+
+    public Collection<?> getPinnedIds() {
+        return Collections.unmodifiableCollection(pinnedIds);
+    }
+
+    /** Drop all loaded pages and the row count. The rows are loaded again if needed. */
+    public void refresh() {
+        pages.clear();
+        loadedIds.clear();
+        size = -1;
+        fireItemSetChange();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("page size must be positive");
+        this.pageSize = pageSize;
+        refresh();
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Set the number of pages hold in memory.
+     *
+     * @param maxPages
+     */
+    public void setMaxPages(int maxPages) {
+        if (maxPages < 1) throw new IllegalArgumentException("max pages must be positive");
+        this.maxPages = maxPages;
+        refresh();
+    }
+
+    public PagedDataProvider<T> getProvider() {
+        return provider;
+    }
+
+    private Page getPage(int pageNr) {
+        Page page = pages.get(pageNr);
+        if (page != null) return page;
+        int offset = pageNr * pageSize;
+        int limit = Math.min(pageSize, size() - offset);
+        List<T> rows =
+                provider.fetch(offset, limit, sortPropertyIds, sortAscending, filter);
+        if (rows == null) rows = Collections.emptyList();
+        if (rows.size() != limit)
+            log.d("provider returned unexpected number of rows", offset, limit, rows.size());
+        int len = Math.min(rows.size(), limit);
+        page = new Page(len);
+        for (int i = 0; i < len; i++) {
+            T row = rows.get(i);
+            Object id = getItemId(row);
+            page.ids[i] = id;
+            page.items[i] = createItem(row);
+            loadedIds.put(id, offset + i);
+            if (pinnedIds.contains(id)) pinnedItems.put(id, page.items[i]);
+        }
+        pages.put(pageNr, page);
+        return page;
+    }
+
+    private Item getLoadedItem(int index) {
+        Page page = getPage(index / pageSize);
+        int pos = index % pageSize;
+        return pos < page.items.length ? page.items[pos] : null;
+    }
+
+    @Override
+    public Object getIdByIndex(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("" + index);
+        Page page = getPage(index / pageSize);
+        int pos = index % pageSize;
+        return pos < page.ids.length ? page.ids[pos] : null;
+    }
+
+    @Override
+    public List<?> getItemIds(int startIndex, int numberOfItems) {
+        if (numberOfItems < 0) throw new IllegalArgumentException("" + numberOfItems);
+        int end = Math.min(size(), startIndex + numberOfItems);
+        if (startIndex < 0 || startIndex > end)
+            throw new IndexOutOfBoundsException("" + startIndex);
+        ArrayList<Object> out = new ArrayList<Object>(end - startIndex);
+        for (int i = startIndex; i < end; i++) {
+            Object id = getIdByIndex(i);
+            if (id != null) out.add(id);
+        }
+        return out;
+    }
+
+    @Override
+    public int indexOfId(Object itemId) {
+        if (itemId == null) return -1;
+        Integer index = loadedIds.get(itemId);
+        if (index != null) return index;
+        int found = provider.indexOf(itemId, sortPropertyIds, sortAscending, filter);
+        return found < size() ? found : -1;
+    }
+
+    @Override
+    public Item getItem(Object itemId) {
+        if (itemId == null) return null;
+        Integer index = loadedIds.get(itemId);
+        if (index == null) {
+            Item item = pinnedItems.get(itemId);
+            if (item != null) return item;
+            int found = indexOfId(itemId);
+            if (found < 0) return null;
+            // load the page, the provider could have changed in the meantime
+            getPage(found / pageSize);
+            index = loadedIds.get(itemId);
+            if (index == null) return null;
+        }
+        return getLoadedItem(index);
+    }
+
+    /**
+     * Not supported, it would load all rows from the provider.
+     *
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public Collection<?> getItemIds() {
+        throw new UnsupportedOperationException(
+                "Can't list all ids of a lazy container, use getItemIds(int, int)");
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) size = Math.max(0, provider.count(filter));
+        return size;
+    }
+
+    @Override
+    public boolean containsId(Object itemId) {
+        if (itemId == null) return false;
+        if (loadedIds.containsKey(itemId) || pinnedItems.containsKey(itemId)) return true;
+        return indexOfId(itemId) >= 0;
+    }
+
+    @Override
+    public Collection<?> getContainerPropertyIds() {
+        return Collections.unmodifiableCollection(propertyTypes.keySet());
+    }
+
+    @Override
+    public Property<?> getContainerProperty(Object itemId, Object propertyId) {
+        Item item = getItem(itemId);
+        return item == null ? null : item.getItemProperty(propertyId);
+    }
+
+    @Override
+    public Class<?> getType(Object propertyId) {
+        return propertyTypes.get(propertyId);
+    }
+
+    /**
+     * Define a property. The default value is ignored, the items are created by {@link
+     * #createItem(Object)}.
+     */
+    @Override
+    public boolean addContainerProperty(Object propertyId, Class<?> type, Object defaultValue)
+            throws UnsupportedOperationException {
+        if (propertyId == null || type == null || propertyTypes.containsKey(propertyId))
+            return false;
+        propertyTypes.put(propertyId, type);
+        fireContainerPropertySetChange();
+        return true;
+    }
+
+    @Override
+    public boolean removeContainerProperty(Object propertyId)
+            throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sort(Object[] propertyId, boolean[] ascending) {
+        ArrayList<Object> ids = new ArrayList<Object>();
+        ArrayList<Boolean> directions = new ArrayList<Boolean>();
+        for (int i = 0; i < propertyId.length; i++) {
+            if (!propertyTypes.containsKey(propertyId[i])) continue;
+            ids.add(propertyId[i]);
+            directions.add(i < ascending.length ? ascending[i] : true);
+        }
+        sortPropertyIds = ids.toArray();
+        sortAscending = new boolean[directions.size()];
+        for (int i = 0; i < sortAscending.length; i++) sortAscending[i] = directions.get(i);
+        refresh();
+    }
+
+    @Override
+    public Collection<?> getSortableContainerPropertyIds() {
+        return getContainerPropertyIds();
+    }
+
+    @Override
+    public Object nextItemId(Object itemId) {
+        int index = indexOfId(itemId);
+        if (index < 0 || index + 1 >= size()) return null;
+        return getIdByIndex(index + 1);
+    }
+
+    @Override
+    public Object prevItemId(Object itemId) {
+        int index = indexOfId(itemId);
+        if (index < 1) return null;
+        return getIdByIndex(index - 1);
+    }
+
+    @Override
+    public Object firstItemId() {
+        return size() > 0 ? getIdByIndex(0) : null;
+    }
+
+    @Override
+    public Object lastItemId() {
+        return size() > 0 ? getIdByIndex(size() - 1) : null;
+    }
+
+    @Override
+    public boolean isFirstId(Object itemId) {
+        return itemId != null && indexOfId(itemId) == 0;
+    }
+
+    @Override
+    public boolean isLastId(Object itemId) {
+        return itemId != null && size() > 0 && indexOfId(itemId) == size() - 1;
+    }
+
+    @Override
+    public void addItemSetChangeListener(Container.ItemSetChangeListener listener) {
+        super.addItemSetChangeListener(listener);
+    }
+
+    @Override
+    public void addListener(Container.ItemSetChangeListener listener) {
+        super.addListener(listener);
+    }
+
+    @Override
+    public void removeItemSetChangeListener(Container.ItemSetChangeListener listener) {
+        super.removeItemSetChangeListener(listener);
+    }
+
+    @Override
+    public void removeListener(Container.ItemSetChangeListener listener) {
+        super.removeListener(listener);
+    }
+
+    @Override
+    public Item addItem(Object itemId) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItem() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeItem(Object itemId) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAllItems() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItemAfter(Object previousItemId) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item addItemAfter(Object previousItemId, Object newItemId)
+            throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object addItemAt(int index) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Item addItemAt(int index, Object newItemId) throws UnsupportedOperationException {
+        throw new UnsupportedOperationException();
+    }
+
+    private static class Page implements Serializable {
+
+        private final Object[] ids;
+        private final Item[] items;
+
+        Page(int len) {
+            ids = new Object[len];
+            items = new Item[len];
+        }
+    }
+}
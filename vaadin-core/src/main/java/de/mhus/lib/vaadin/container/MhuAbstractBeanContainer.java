@@ -31,13 +31,18 @@ package de.mhus.lib.vaadin.container;
  */
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.vaadin.v7.data.Container;
 import com.vaadin.v7.data.Container.Filterable;
@@ -53,9 +58,13 @@ import com.vaadin.v7.data.util.AbstractInMemoryContainer;
 import com.vaadin.v7.data.util.ItemSorter;
 import com.vaadin.v7.data.util.MethodProperty.MethodException;
 import com.vaadin.v7.data.util.VaadinPropertyDescriptor;
+import com.vaadin.v7.data.util.filter.And;
+import com.vaadin.v7.data.util.filter.Compare;
+import com.vaadin.v7.data.util.filter.Or;
 import com.vaadin.v7.data.util.filter.SimpleStringFilter;
 import com.vaadin.v7.data.util.filter.UnsupportedFilterException;
 
+import de.mhus.lib.vaadin.container.MhuBeanItem.PojoProperty;
 import de.mhus.lib.vaadin.container.MhuBeanItem.PojoPropertyDescriptor;
 
 /**
@@ -150,6 +159,24 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
     private final Map<IDTYPE, MhuBeanItem<BEANTYPE>> itemIdToItem =
             new HashMap<IDTYPE, MhuBeanItem<BEANTYPE>>();
 
+    /** Secondary indexes for filtering, by property id. */
+    private final LinkedHashMap<Object, PropertyIndex> indexes =
+            new LinkedHashMap<Object, PropertyIndex>();
+
+    /** Maps the beans to the item ids, only maintained if indexes are defined. */
+    private final IdentityHashMap<BEANTYPE, IDTYPE> beanIds =
+            new IdentityHashMap<BEANTYPE, IDTYPE>();
+
+    /** Maps indexed properties not resolved by the bean (no PojoProperty) to the item ids. */
+    private final IdentityHashMap<Property<?>, IDTYPE> propertyItemIds =
+            new IdentityHashMap<Property<?>, IDTYPE>();
+
+    /** Result of the indexed filters while filtering, null if not used. */
+    private transient Set<Object> indexedMatches;
+
+    /** Filters not answered by the indexes while filtering. */
+    private transient List<Filter> remainingFilters;
+
     /** The type of the beans in the container. */
     private final Class<? super BEANTYPE> type;
 
@@ -241,6 +268,9 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
             removeAllValueChangeListeners(item);
         }
         itemIdToItem.clear();
+        for (PropertyIndex index : indexes.values()) index.clear();
+        beanIds.clear();
+        propertyItemIds.clear();
 
         // fire event only if the visible view changed, regardless of whether
         // filtered out items were removed or not
@@ -303,7 +333,7 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
     public boolean removeItem(Object itemId) {
         // TODO should also remove items that are filtered out
         int origSize = size();
-        Item item = getItem(itemId);
+        MhuBeanItem<BEANTYPE> item = getItem(itemId);
         int position = indexOfId(itemId);
 
         if (internalRemoveItem(itemId)) {
@@ -312,6 +342,7 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
 
             // remove item
             itemIdToItem.remove(itemId);
+            unindexItem(itemId, item);
 
             // fire event only if the visible view changed, regardless of
             // whether filtered out items were removed or not
@@ -328,10 +359,185 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
     /** Re-filter the container when one of the monitored properties changes. */
     @Override
     public void valueChange(ValueChangeEvent event) {
+        if (!indexes.isEmpty()) {
+            // update the index entries of the changed item before filtering, other properties
+            // are filtered but not indexed
+            Property<?> property = event.getProperty();
+            IDTYPE itemId =
+                    property instanceof PojoProperty
+                            ? beanIds.get(((PojoProperty<?>) property).getBean())
+                            : propertyItemIds.get(property);
+            if (itemId != null) indexItem(itemId, itemIdToItem.get(itemId));
+        }
         // if a property that is used in a filter is changed, refresh filtering
         filterAll();
     }
 
+    /**
+     * Add a secondary index for the property. Filters on indexed properties (SimpleStringFilter,
+     * Compare and And/Or of them) are answered by the index instead of evaluating every item.
+     *
+     * <p>The index is updated if items are added or removed and if the value is changed through
+     * the item property. If beans are modified directly, call {@link #refreshIndexes()} before
+     * filtering.
+     *
+     * @param propertyId
+     */
+    public void addIndex(Object propertyId) {
+        if (indexes.containsKey(propertyId)) return;
+        if (!model.containsKey(propertyId)) {
+            throw new IllegalArgumentException("Property " + propertyId + " not found");
+        }
+        PropertyIndex index = new PropertyIndex(propertyId);
+        for (Map.Entry<IDTYPE, MhuBeanItem<BEANTYPE>> entry : itemIdToItem.entrySet()) {
+            index.put(entry.getKey(), getIndexValue(entry.getValue(), propertyId));
+            beanIds.put(entry.getValue().getBean(), entry.getKey());
+            // keep the index up to date even if the property is not filtered
+            watchIndexed(entry.getKey(), entry.getValue(), propertyId);
+        }
+        indexes.put(propertyId, index);
+    }
+
+    public void removeIndex(Object propertyId) {
+        if (indexes.remove(propertyId) == null) return;
+        if (indexes.isEmpty()) beanIds.clear();
+        boolean filtered = isFiltered(propertyId);
+        for (MhuBeanItem<BEANTYPE> item : itemIdToItem.values()) {
+            Property<?> property = item.getExistingItemProperty(propertyId);
+            if (property != null) propertyItemIds.remove(property);
+            if (!filtered) removeValueChangeListener(item, propertyId);
+        }
+    }
+
+    /**
+     * Listen to the indexed property of the item. If the item can't be found by the bean of the
+     * property, the item id is stored for the property.
+     */
+    private void watchIndexed(IDTYPE itemId, MhuBeanItem<BEANTYPE> item, Object propertyId) {
+        addValueChangeListener(item, propertyId);
+        Property<?> property = item.getExistingItemProperty(propertyId);
+        if (property != null && !(property instanceof PojoProperty))
+            propertyItemIds.put(property, itemId);
+    }
+
+    private boolean isFiltered(Object propertyId) {
+        for (Filter filter : getFilters()) if (filter.appliesToProperty(propertyId)) return true;
+        return false;
+    }
+
+    public Collection<Object> getIndexedPropertyIds() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    /** Read the values of all items again, e.g. after the beans were modified directly. */
+    public void refreshIndexes() {
+        for (PropertyIndex index : indexes.values()) {
+            index.clear();
+            for (Map.Entry<IDTYPE, MhuBeanItem<BEANTYPE>> entry : itemIdToItem.entrySet())
+                index.put(entry.getKey(), getIndexValue(entry.getValue(), index.getPropertyId()));
+        }
+    }
+
+    private void indexItem(IDTYPE itemId, MhuBeanItem<BEANTYPE> item) {
+        if (indexes.isEmpty() || item == null) return;
+        beanIds.put(item.getBean(), itemId);
+        for (PropertyIndex index : indexes.values())
+            index.put(itemId, getIndexValue(item, index.getPropertyId()));
+    }
+
+    private void unindexItem(Object itemId, MhuBeanItem<BEANTYPE> item) {
+        if (indexes.isEmpty()) return;
+        if (item != null) beanIds.remove(item.getBean());
+        for (PropertyIndex index : indexes.values()) {
+            index.remove(itemId);
+            Property<?> property =
+                    item == null ? null : item.getExistingItemProperty(index.getPropertyId());
+            if (property != null) propertyItemIds.remove(property);
+        }
+    }
+
+    private static Object getIndexValue(MhuBeanItem<?> item, Object propertyId) {
+        return item.getItemPropertyValue(propertyId);
+    }
+
+    @Override
+    protected boolean doFilterContainer(boolean hasFilters) {
+        if (!hasFilters || indexes.isEmpty()) return super.doFilterContainer(hasFilters);
+
+        ArrayList<Set<Object>> matches = new ArrayList<Set<Object>>();
+        ArrayList<Filter> remaining = new ArrayList<Filter>();
+        for (Filter filter : getFilters()) {
+            Set<Object> ids = findIndexed(filter);
+            if (ids == null) remaining.add(filter);
+            else matches.add(ids);
+        }
+        if (matches.isEmpty()) return super.doFilterContainer(hasFilters);
+
+        // the order of the items and the change detection is still done by the super class
+        indexedMatches = PropertyIndex.intersect(matches);
+        remainingFilters = remaining;
+        try {
+            return super.doFilterContainer(hasFilters);
+        } finally {
+            indexedMatches = null;
+            remainingFilters = null;
+        }
+    }
+
+    @Override
+    protected boolean passesFilters(Object itemId) {
+        Set<Object> matches = indexedMatches;
+        if (matches == null) return super.passesFilters(itemId);
+        if (!matches.contains(itemId)) return false;
+        if (remainingFilters.isEmpty()) return true;
+        Item item = getUnfilteredItem(itemId);
+        for (Filter filter : remainingFilters) {
+            if (!filter.passesFilter(itemId, item)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the ids of the items passing the filter using the indexes.
+     *
+     * @param filter
+     * @return The item ids or null if the filter can't be answered by the indexes
+     */
+    private Set<Object> findIndexed(Filter filter) {
+        // only the known implementations, subclasses could change the semantic
+        if (filter.getClass() == SimpleStringFilter.class) {
+            SimpleStringFilter f = (SimpleStringFilter) filter;
+            PropertyIndex index = indexes.get(f.getPropertyId());
+            if (index == null) return null;
+            return index.findString(f.getFilterString(), f.isIgnoreCase(), f.isOnlyMatchPrefix());
+        }
+        if (filter.getClass().getEnclosingClass() == Compare.class) {
+            Compare f = (Compare) filter;
+            PropertyIndex index = indexes.get(f.getPropertyId());
+            if (index == null) return null;
+            return index.findCompare(f.getOperation(), f.getValue());
+        }
+        if (filter.getClass() == And.class) {
+            ArrayList<Set<Object>> sets = new ArrayList<Set<Object>>();
+            for (Filter part : ((And) filter).getFilters()) {
+                Set<Object> ids = findIndexed(part);
+                if (ids == null) return null;
+                sets.add(ids);
+            }
+            return sets.isEmpty() ? null : PropertyIndex.intersect(sets);
+        }
+        if (filter.getClass() == Or.class) {
+            HashSet<Object> out = new HashSet<Object>();
+            for (Filter part : ((Or) filter).getFilters()) {
+                Set<Object> ids = findIndexed(part);
+                if (ids == null) return null;
+                out.addAll(ids);
+            }
+            return out;
+        }
+        return null;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -360,7 +566,11 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
     public void removeAllContainerFilters() {
         if (!getFilters().isEmpty()) {
             for (Item item : itemIdToItem.values()) {
-                removeAllValueChangeListeners(item);
+                for (Object propertyId : item.getItemPropertyIds()) {
+                    // indexed properties are still monitored
+                    if (!indexes.containsKey(propertyId))
+                        removeValueChangeListener(item, propertyId);
+                }
             }
             removeAllFilters();
         }
@@ -376,7 +586,7 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
     @Override
     public void removeContainerFilters(Object propertyId) {
         Collection<Filter> removedFilters = super.removeFilters(propertyId);
-        if (!removedFilters.isEmpty()) {
+        if (!removedFilters.isEmpty() && !indexes.containsKey(propertyId)) {
             // stop listening to change events for the property
             for (Item item : itemIdToItem.values()) {
                 removeValueChangeListener(item, propertyId);
@@ -438,7 +648,11 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
      * @param propertyId The id of the property
      */
     private void removeValueChangeListener(Item item, Object propertyId) {
-        Property<?> property = item.getItemProperty(propertyId);
+        // properties not created yet have no listeners
+        Property<?> property =
+                item instanceof MhuBeanItem
+                        ? ((MhuBeanItem<?>) item).getExistingItemProperty(propertyId)
+                        : item.getItemProperty(propertyId);
         if (property instanceof ValueChangeNotifier) {
             ((ValueChangeNotifier) property).removeListener(this);
         }
@@ -489,6 +703,7 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
     @Override
     protected void registerNewItem(int position, IDTYPE itemId, MhuBeanItem<BEANTYPE> item) {
         itemIdToItem.put(itemId, item);
+        indexItem(itemId, item);
 
         // add listeners to be able to update filtering on property
         // changes
@@ -500,6 +715,8 @@ public abstract class MhuAbstractBeanContainer<IDTYPE, BEANTYPE>
                 }
             }
         }
+        // indexes are updated on value changes
+        for (Object propertyId : indexes.keySet()) watchIndexed(itemId, item, propertyId);
     }
 
     /**
@@ -38,7 +38,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,9 +67,30 @@ import de.mhus.lib.core.pojo.PojoParser;
 @SuppressWarnings({"serial", "deprecation"})
 public class MhuBeanItem<BT> extends PropertysetItem {
 
+    /**
+     * Parsed property descriptors per class. The entries are stored with the class itself, so the
+     * classes of a refreshed bundle can be collected together with their descriptors.
+     */
+    private static final ClassValue<Map<String, PojoPropertyDescriptor<?>>> DESCRIPTORS =
+            new ClassValue<Map<String, PojoPropertyDescriptor<?>>>() {
+                @Override
+                protected Map<String, PojoPropertyDescriptor<?>> computeValue(Class<?> type) {
+                    return Collections.unmodifiableMap(parsePropertyDescriptors(type));
+                }
+            };
+
     /** The bean which this Item is based on. */
     private final BT bean;
 
+    /**
+     * Descriptors of the properties not yet added to the item set, null if all properties are
+     * added. In this lazy mode the properties are created on first access.
+     */
+    private Map<String, PojoPropertyDescriptor<BT>> lazyDescriptors;
+
+    /** Properties created in lazy mode, null if none. */
+    private HashMap<Object, Property<?>> lazyProperties;
+
     /**
      * Creates a new instance of <code>BeanItem</code> and adds all properties of a Java Bean to it.
      * The properties are identified by their respective bean names.
@@ -78,23 +102,23 @@ public class MhuBeanItem<BT> extends PropertysetItem {
      */
     @SuppressWarnings("unchecked")
     public MhuBeanItem(BT bean) {
-        this(bean, getPropertyDescriptors((Class<BT>) bean.getClass()));
+        this(bean, getSharedPropertyDescriptors((Class<BT>) bean.getClass()));
     }
 
     /**
      * Creates a new instance of <code>BeanItem</code> using a pre-computed set of properties. The
      * properties are identified by their respective bean names.
      *
+     * <p>The properties are created lazy on first access. Changing the set of properties creates
+     * all of them.
+     *
      * @param bean the Java Bean to copy properties from.
-     * @param propertyDescriptors pre-computed property descriptors
+     * @param propertyDescriptors pre-computed property descriptors, must not be changed later
      */
     MhuBeanItem(BT bean, Map<String, PojoPropertyDescriptor<BT>> propertyDescriptors) {
 
         this.bean = bean;
-
-        for (VaadinPropertyDescriptor<BT> pd : propertyDescriptors.values()) {
-            addItemProperty(pd.getName(), pd.createProperty(bean));
-        }
+        this.lazyDescriptors = propertyDescriptors;
     }
 
     /**
@@ -113,8 +137,8 @@ public class MhuBeanItem<BT> extends PropertysetItem {
 
         // Create bean information
         @SuppressWarnings("unchecked")
-        LinkedHashMap<String, PojoPropertyDescriptor<BT>> pds =
-                getPropertyDescriptors((Class<BT>) bean.getClass());
+        Map<String, PojoPropertyDescriptor<BT>> pds =
+                getSharedPropertyDescriptors((Class<BT>) bean.getClass());
 
         // Add all the bean properties as MethodProperties to this Item
         for (Object id : propertyIds) {
@@ -145,20 +169,41 @@ public class MhuBeanItem<BT> extends PropertysetItem {
      * <p>Note : This version only supports introspectable bean properties and their getter and
      * setter methods. Stand-alone <code>is</code> and <code>are</code> methods are not supported.
      *
+     * <p>The class is parsed once, the result is cached.
+     *
      * @param beanClass the Java Bean class to get properties for.
-     * @return an ordered map from property names to property descriptors
+     * @return an ordered map from property names to property descriptors, the caller owns the map
      */
     static <BT> LinkedHashMap<String, PojoPropertyDescriptor<BT>> getPropertyDescriptors(
             final Class<BT> beanClass) {
+        return new LinkedHashMap<String, PojoPropertyDescriptor<BT>>(
+                getSharedPropertyDescriptors(beanClass));
+    }
 
-        final LinkedHashMap<String, PojoPropertyDescriptor<BT>> pdMap =
-                new LinkedHashMap<String, PojoPropertyDescriptor<BT>>();
+    /**
+     * Return the cached descriptors of the class, the map must not be modified.
+     *
+     * @param beanClass
+     * @return an unmodifiable ordered map from property names to property descriptors
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <BT> Map<String, PojoPropertyDescriptor<BT>> getSharedPropertyDescriptors(
+            final Class<BT> beanClass) {
+        return (Map) DESCRIPTORS.get(beanClass);
+    }
+
+    private static LinkedHashMap<String, PojoPropertyDescriptor<?>> parsePropertyDescriptors(
+            final Class<?> beanClass) {
+
+        final LinkedHashMap<String, PojoPropertyDescriptor<?>> pdMap =
+                new LinkedHashMap<String, PojoPropertyDescriptor<?>>();
 
         PojoModel m = new PojoParser().parse(beanClass).getModel();
 
         for (String name : m.getAttributeNames()) {
             PojoAttribute<?> attr = m.getAttribute(name);
-            pdMap.put(name, new PojoPropertyDescriptor<BT>(attr));
+            BeanAccessor accessor = BeanAccessor.create(beanClass, attr);
+            pdMap.put(name, new PojoPropertyDescriptor<Object>(attr, accessor));
         }
 
         return pdMap;
@@ -167,9 +212,22 @@ public class MhuBeanItem<BT> extends PropertysetItem {
     public static class PojoPropertyDescriptor<BT> implements VaadinPropertyDescriptor<BT> {
 
         private PojoAttribute<?> attr;
+        // method handles are not serializable, the attribute is used after deserialization
+        private transient BeanAccessor accessor;
 
         public PojoPropertyDescriptor(PojoAttribute<?> attr) {
+            this(attr, null);
+        }
+
+        /**
+         * Create a descriptor with a compiled accessor.
+         *
+         * @param attr The attribute, used if the accessor is null or can't handle a value
+         * @param accessor The accessor or null
+         */
+        public PojoPropertyDescriptor(PojoAttribute<?> attr, BeanAccessor accessor) {
             this.attr = attr;
+            this.accessor = accessor;
         }
 
         @Override
@@ -184,12 +242,27 @@ public class MhuBeanItem<BT> extends PropertysetItem {
 
         @Override
         public Property<?> createProperty(BT bean) {
-            return new PojoProperty<Object>(attr, bean);
+            return new PojoProperty<Object>(attr, bean, accessor);
         }
 
         public PojoAttribute<?> getPojoAttribute() {
             return attr;
         }
+
+        /**
+         * Read the value of the bean without creating a property.
+         *
+         * @param bean
+         * @return The value or null if it can't be read
+         */
+        public Object getValue(BT bean) {
+            try {
+                if (accessor != null) return accessor.get(bean);
+                return attr.get(bean);
+            } catch (IOException e) {
+                return null;
+            }
+        }
     }
 
     public static class PojoProperty<T> extends AbstractProperty<T> {
@@ -199,15 +272,26 @@ public class MhuBeanItem<BT> extends PropertysetItem {
         @SuppressWarnings("rawtypes")
         private PojoAttribute attr;
 
+        private transient BeanAccessor accessor;
+
         public PojoProperty(@SuppressWarnings("rawtypes") PojoAttribute attr, Object bean) {
+            this(attr, bean, null);
+        }
+
+        public PojoProperty(
+                @SuppressWarnings("rawtypes") PojoAttribute attr,
+                Object bean,
+                BeanAccessor accessor) {
             this.attr = attr;
             this.bean = bean;
+            this.accessor = accessor;
         }
 
         @SuppressWarnings("unchecked")
         @Override
         public T getValue() {
             try {
+                if (accessor != null) return (T) accessor.get(bean);
                 return (T) attr.get(bean);
             } catch (IOException e) {
                 return null;
@@ -218,11 +302,14 @@ public class MhuBeanItem<BT> extends PropertysetItem {
         @Override
         public void setValue(T newValue) throws com.vaadin.v7.data.Property.ReadOnlyException {
             try {
-                attr.set(bean, newValue, false);
+                if (accessor != null && accessor.canSet(newValue)) accessor.set(bean, newValue);
+                else attr.set(bean, newValue, false);
             } catch (IOException e) {
                 throw new com.vaadin.v7.data.Property.ReadOnlyException(
                         "Can't write " + attr.getName() + ": " + e);
             }
+            // containers listen to keep filters and indexes up to date
+            fireValueChange();
         }
 
         @SuppressWarnings("unchecked")
@@ -230,6 +317,10 @@ public class MhuBeanItem<BT> extends PropertysetItem {
         public Class<? extends T> getType() {
             return attr.getType();
         }
+
+        public Object getBean() {
+            return bean;
+        }
     }
 
     /**
@@ -269,6 +360,112 @@ public class MhuBeanItem<BT> extends PropertysetItem {
         }
     }
 
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Property getItemProperty(Object id) {
+        if (lazyDescriptors == null) return super.getItemProperty(id);
+        Property<?> property = lazyProperties == null ? null : lazyProperties.get(id);
+        if (property != null) return property;
+        PojoPropertyDescriptor<BT> pd = lazyDescriptors.get(id);
+        if (pd == null) return null;
+        property = pd.createProperty(bean);
+        if (lazyProperties == null) lazyProperties = new HashMap<Object, Property<?>>(4);
+        lazyProperties.put(id, property);
+        return property;
+    }
+
+    /**
+     * Return the property only if it was already created.
+     *
+     * @param id
+     * @return The property or null
+     */
+    Property<?> getExistingItemProperty(Object id) {
+        if (lazyDescriptors == null) return super.getItemProperty(id);
+        return lazyProperties == null ? null : lazyProperties.get(id);
+    }
+
+    /**
+     * Return the current value of the property without creating the property in lazy mode.
+     *
+     * @param id
+     * @return The value or null if the property is not defined
+     */
+    Object getItemPropertyValue(Object id) {
+        Property<?> property = getExistingItemProperty(id);
+        if (property != null) return property.getValue();
+        if (lazyDescriptors == null) return null;
+        PojoPropertyDescriptor<BT> pd = lazyDescriptors.get(id);
+        return pd == null ? null : pd.getValue(bean);
+    }
+
+    @Override
+    public Collection<?> getItemPropertyIds() {
+        if (lazyDescriptors == null) return super.getItemPropertyIds();
+        return Collections.unmodifiableCollection(lazyDescriptors.keySet());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean addItemProperty(Object id, Property property) {
+        materialize();
+        return super.addItemProperty(id, property);
+    }
+
+    @Override
+    public boolean removeItemProperty(Object id) {
+        materialize();
+        return super.removeItemProperty(id);
+    }
+
+    /**
+     * Items are equal if they wrap the same bean instance and show the same properties in the same
+     * order. The result does not depend on the lazy mode, the properties are not created.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || obj.getClass() != getClass()) return false;
+        MhuBeanItem<?> other = (MhuBeanItem<?>) obj;
+        if (bean != other.bean) return false;
+        // shared descriptors of the same class, nothing to compare
+        Object descriptors = lazyDescriptors;
+        if (descriptors != null && descriptors == other.lazyDescriptors) return true;
+        Collection<?> ids = getItemPropertyIds();
+        Collection<?> otherIds = other.getItemPropertyIds();
+        if (ids.size() != otherIds.size()) return false;
+        Iterator<?> otherIter = otherIds.iterator();
+        for (Object id : ids) if (!id.equals(otherIter.next())) return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = System.identityHashCode(bean);
+        for (Object id : getItemPropertyIds()) hash = 31 * hash + id.hashCode();
+        return hash;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        materialize();
+        return super.clone();
+    }
+
+    /** Leave the lazy mode, add all properties to the property set. */
+    private void materialize() {
+        Map<String, PojoPropertyDescriptor<BT>> descriptors = lazyDescriptors;
+        if (descriptors == null) return;
+        HashMap<Object, Property<?>> created = lazyProperties;
+        lazyDescriptors = null;
+        lazyProperties = null;
+        for (VaadinPropertyDescriptor<BT> pd : descriptors.values()) {
+            Property<?> property = created == null ? null : created.get(pd.getName());
+            if (property == null) property = pd.createProperty(bean);
+            super.addItemProperty(pd.getName(), property);
+        }
+    }
+
     /**
      * Expands nested bean properties by replacing a top-level property with some or all of its
      * sub-properties. The expansion is not recursive.
@@ -283,7 +480,7 @@ public class MhuBeanItem<BT> extends PropertysetItem {
         if (0 == subPropertyIds.length) {
             // Enumerate all sub-properties
             Class<?> propertyType = getItemProperty(propertyId).getType();
-            Map<String, ?> pds = getPropertyDescriptors(propertyType);
+            Map<String, ?> pds = getSharedPropertyDescriptors(propertyType);
             subPropertySet.addAll(pds.keySet());
         }
 
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.container;
+
+import java.io.Serializable;
+import java.util.List;
+
+import de.mhus.lib.core.util.FilterRequest;
+
+/**
+ * Source of the rows of a {@link LazyPagedContainer}. Sorting and filtering is done by the source,
+ * e.g. by the database query.
+ *
+ * @param <T> Type of the rows
+ */
+public interface PagedDataProvider<T> extends Serializable {
+
+    /**
+     * Return the number of rows matching the filter.
+     *
+     * @param filter The filter or null
+     * @return The number of rows
+     */
+    int count(FilterRequest filter);
+
+    /**
+     * Return a page of the rows matching the filter in the requested order.
+     *
+     * @param offset Index of the first row
+     * @param limit Maximum number of rows
+     * @param sortPropertyIds Properties to sort by, could be empty
+     * @param ascending Direction for each sort property
+     * @param filter The filter or null
+     * @return The rows, not more then limit
+     */
+    List<T> fetch(
+            int offset,
+            int limit,
+            Object[] sortPropertyIds,
+            boolean[] ascending,
+            FilterRequest filter);
+
+    /**
+     * Return the position of the row with the item id in the result. The container asks for ids
+     * not in the loaded pages, e.g. to select a row not shown yet. By default the rows of other
+     * pages are unknown.
+     *
+     * @param itemId The id like returned by the container
+     * @param sortPropertyIds Properties to sort by, could be empty
+     * @param ascending Direction for each sort property
+     * @param filter The filter or null
+     * @return The index or -1 if not found or not supported
+     */
+    default int indexOf(
+            Object itemId, Object[] sortPropertyIds, boolean[] ascending, FilterRequest filter) {
+        return -1;
+    }
+}
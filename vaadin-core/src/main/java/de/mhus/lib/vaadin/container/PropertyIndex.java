@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.container;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.vaadin.v7.data.util.filter.Compare;
+
+/**
+ * Secondary index of the values of one container property. Equality is answered by a hash index,
+ * prefix and range queries by sorted views which are created on demand and dropped on every
+ * change.
+ *
+ * <p>All query methods return null if the index can't answer the query with the same result as
+ * the filter would have, the caller must evaluate the filter in this case.
+ */
+public class PropertyIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Object propertyId;
+    private final HashMap<Object, Object> valueById = new HashMap<Object, Object>();
+    private final HashMap<Object, Set<Object>> idsByValue = new HashMap<Object, Set<Object>>();
+    // class of all not null values or null if unknown or mixed
+    private Class<?> valueClass;
+    private boolean mixed;
+
+    private transient TreeMap<Object, Set<Object>> sorted;
+    private transient TreeMap<String, Set<Object>> strings;
+    private transient TreeMap<String, Set<Object>> lowerStrings;
+
+    public PropertyIndex(Object propertyId) {
+        this.propertyId = propertyId;
+    }
+
+    public Object getPropertyId() {
+        return propertyId;
+    }
+
+    /**
+     * Set the current value of the item, replaces the old value.
+     *
+     * @param itemId
+     * @param value
+     */
+    public void put(Object itemId, Object value) {
+        if (valueById.containsKey(itemId)) {
+            Object old = valueById.get(itemId);
+            if (old == null ? value == null : old.equals(value)) return;
+            remove(itemId);
+        }
+        valueById.put(itemId, value);
+        Set<Object> ids = idsByValue.get(value);
+        if (ids == null) {
+            ids = new HashSet<Object>();
+            idsByValue.put(value, ids);
+        }
+        ids.add(itemId);
+        if (value != null && !mixed) {
+            if (valueClass == null) valueClass = value.getClass();
+            else if (valueClass != value.getClass()) mixed = true;
+        }
+        invalidate();
+    }
+
+    public void remove(Object itemId) {
+        if (!valueById.containsKey(itemId)) return;
+        Object value = valueById.remove(itemId);
+        Set<Object> ids = idsByValue.get(value);
+        if (ids != null) {
+            ids.remove(itemId);
+            if (ids.isEmpty()) idsByValue.remove(value);
+        }
+        invalidate();
+    }
+
+    public void clear() {
+        valueById.clear();
+        idsByValue.clear();
+        valueClass = null;
+        mixed = false;
+        invalidate();
+    }
+
+    public int size() {
+        return valueById.size();
+    }
+
+    private void invalidate() {
+        sorted = null;
+        strings = null;
+        lowerStrings = null;
+    }
+
+    /**
+     * Find the items like SimpleStringFilter, items with null value never match.
+     *
+     * @param filterString The filter string, already in lower case if ignoreCase is set
+     * @param ignoreCase
+     * @param onlyMatchPrefix
+     * @return The matching item ids
+     */
+    public Set<Object> findString(
+            String filterString, boolean ignoreCase, boolean onlyMatchPrefix) {
+        TreeMap<String, Set<Object>> map = getStrings(ignoreCase);
+        HashSet<Object> out = new HashSet<Object>();
+        if (onlyMatchPrefix) {
+            for (Map.Entry<String, Set<Object>> entry :
+                    map.tailMap(filterString, true).entrySet()) {
+                if (!entry.getKey().startsWith(filterString)) break;
+                out.addAll(entry.getValue());
+            }
+        } else {
+            // still faster than the filter, only distinct values are checked
+            for (Map.Entry<String, Set<Object>> entry : map.entrySet())
+                if (entry.getKey().contains(filterString)) out.addAll(entry.getValue());
+        }
+        return out;
+    }
+
+    /**
+     * Find the items like the Compare filter.
+     *
+     * @param operation
+     * @param value The value of the filter
+     * @return The matching item ids or null if the query can't be answered by the index
+     */
+    public Set<Object> findCompare(Compare.Operation operation, Object value) {
+        if (value == null || !isIndexable(value.getClass())) return null;
+        if (mixed || valueClass != null && valueClass != value.getClass()) return null;
+
+        if (operation == Compare.Operation.EQUAL) {
+            Set<Object> ids = idsByValue.get(value);
+            return ids == null ? Collections.<Object>emptySet() : new HashSet<Object>(ids);
+        }
+
+        NavigableMap<Object, Set<Object>> range;
+        boolean withNull = false;
+        switch (operation) {
+            case GREATER:
+                range = getSorted().tailMap(value, false);
+                withNull = true;
+                break;
+            case GREATER_OR_EQUAL:
+                range = getSorted().tailMap(value, true);
+                withNull = true;
+                break;
+            case LESS:
+                range = getSorted().headMap(value, false);
+                break;
+            case LESS_OR_EQUAL:
+                range = getSorted().headMap(value, true);
+                break;
+            default:
+                return null;
+        }
+        HashSet<Object> out = new HashSet<Object>();
+        for (Set<Object> ids : range.values()) out.addAll(ids);
+        // Compare handles null values as greater than every value
+        if (withNull) {
+            Set<Object> ids = idsByValue.get(null);
+            if (ids != null) out.addAll(ids);
+        }
+        return out;
+    }
+
+    /**
+     * Only types with a natural order consistent with equals are supported, otherwise the result
+     * could differ from the filter.
+     */
+    private static boolean isIndexable(Class<?> type) {
+        return type == String.class
+                || type == Integer.class
+                || type == Long.class
+                || type == Short.class
+                || type == Byte.class
+                || type == Character.class
+                || type == Boolean.class
+                || type == Date.class
+                || type.isEnum();
+    }
+
+    private TreeMap<Object, Set<Object>> getSorted() {
+        if (sorted == null) {
+            TreeMap<Object, Set<Object>> map = new TreeMap<Object, Set<Object>>();
+            for (Map.Entry<Object, Set<Object>> entry : idsByValue.entrySet())
+                if (entry.getKey() != null) map.put(entry.getKey(), entry.getValue());
+            sorted = map;
+        }
+        return sorted;
+    }
+
+    private TreeMap<String, Set<Object>> getStrings(boolean lowerCase) {
+        TreeMap<String, Set<Object>> map = lowerCase ? lowerStrings : strings;
+        if (map != null) return map;
+        map = new TreeMap<String, Set<Object>>();
+        for (Map.Entry<Object, Set<Object>> entry : idsByValue.entrySet()) {
+            if (entry.getKey() == null) continue;
+            String key = entry.getKey().toString();
+            if (lowerCase) key = key.toLowerCase();
+            Set<Object> ids = map.get(key);
+            if (ids == null) {
+                ids = new HashSet<Object>();
+                map.put(key, ids);
+            }
+            ids.addAll(entry.getValue());
+        }
+        if (lowerCase) lowerStrings = map;
+        else strings = map;
+        return map;
+    }
+
+    /**
+     * Return the intersection of the sets, the smallest set is iterated.
+     *
+     * @param sets
+     * @return A new set
+     */
+    static Set<Object> intersect(Collection<Set<Object>> sets) {
+        Set<Object> smallest = null;
+        for (Set<Object> set : sets)
+            if (smallest == null || set.size() < smallest.size()) smallest = set;
+        HashSet<Object> out = new HashSet<Object>();
+        if (smallest == null) return out;
+        outer:
+        for (Object id : smallest) {
+            for (Set<Object> set : sets) if (set != smallest && !set.contains(id)) continue outer;
+            out.add(id);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Size aware LRU cache for static files below /VAADIN. Files larger than the entry limit are
+ * remembered without content and streamed from the url.
+ */
+public class StaticResourceCache {
+
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 512 * 1024;
+
+    private final LinkedHashMap<String, Entry> map =
+            new LinkedHashMap<String, Entry>(128, 0.75f, true);
+    private final long maxSize;
+    private final int maxEntrySize;
+    private long size;
+
+    public StaticResourceCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    public StaticResourceCache(long maxSize, int maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public synchronized Entry get(String filename) {
+        return map.get(filename);
+    }
+
+    /**
+     * Load the resource and put it into the cache.
+     *
+     * @param filename The key, the path of the file
+     * @param url Location of the file
+     * @return The new entry
+     * @throws IOException
+     */
+    public Entry load(String filename, URL url) throws IOException {
+        URLConnection con = url.openConnection();
+        long lastModified = con.getLastModified();
+        long length = con.getContentLengthLong();
+        byte[] data = null;
+        try (InputStream is = con.getInputStream()) {
+            if (length >= 0 && length <= maxEntrySize) data = read(is);
+        }
+        if (data != null) length = data.length;
+        Entry entry = new Entry(url, data, length, lastModified, createEtag(data, lastModified));
+        put(filename, entry);
+        return entry;
+    }
+
+    /**
+     * Return the modification time of the url. The connection opens the stream for most
+     * protocols, so it is closed afterwards.
+     *
+     * @param url
+     * @return The time or 0 if unknown
+     * @throws IOException
+     */
+    public static long getLastModified(URL url) throws IOException {
+        URLConnection con = url.openConnection();
+        try (InputStream is = con.getInputStream()) {
+            return con.getLastModified();
+        }
+    }
+
+    private synchronized void put(String filename, Entry entry) {
+        Entry old = map.put(filename, entry);
+        if (old != null) size -= old.getSize();
+        size += entry.getSize();
+        Iterator<Entry> iter = map.values().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            size -= iter.next().getSize();
+            iter.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) >= 0) out.write(buffer, 0, len);
+        return out.toByteArray();
+    }
+
+    private static String createEtag(byte[] data, long lastModified) {
+        if (data == null) {
+            if (lastModified <= 0) return null;
+            return "W/\"" + Long.toHexString(lastModified) + "\"";
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return "\""
+                + Long.toHexString(crc.getValue())
+                + "-"
+                + Integer.toHexString(data.length)
+                + "\"";
+    }
+
+    public static class Entry {
+
+        private final URL url;
+        private final byte[] data;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+
+        Entry(URL url, byte[] data, long length, long lastModified, String etag) {
+            this.url = url;
+            this.data = data;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = etag;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * Return the content or null if the file is too large to be cached.
+         *
+         * @return The content
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Return the length of the content.
+         *
+         * @return The length or -1 if unknown
+         */
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        long getSize() {
+            return data == null ? 0 : data.length;
+        }
+    }
+}
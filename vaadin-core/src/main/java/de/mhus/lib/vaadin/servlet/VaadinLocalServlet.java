@@ -16,6 +16,15 @@
 package de.mhus.lib.vaadin.servlet;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.jar.JarEntry;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -34,7 +43,9 @@ import com.vaadin.server.VaadinServletService;
 public abstract class VaadinLocalServlet extends VaadinServlet {
 
     private static final long serialVersionUID = 1L;
-    private String mappingPath = null;
+    // published once by the first request
+    private volatile Mapping mapping = null;
+    private final StaticResourceCache staticResources = new StaticResourceCache();
 
     @Override
     protected void service(HttpServletRequest request, HttpServletResponse response)
@@ -44,23 +55,37 @@ public abstract class VaadinLocalServlet extends VaadinServlet {
             return;
         }
 
-        if (mappingPath == null) {
-            mappingPath = findMappingPath(request);
-            getService()
-                    .getDeploymentConfiguration()
-                    .getInitParameters()
-                    .setProperty(PARAMETER_VAADIN_RESOURCES, mappingPath);
-        }
+        initMapping(request);
 
         if (isLocalUIDL(request)) {
             request = new UidlRequestWrapper(request);
         } else if (isLocalStaticResourceRequest(request)) {
+            // files are served directly, without session lookup and request handlers
+            if (serveLocalStaticResource(request, response)) return;
             request = createLocalRequestMapper(request);
         }
 
         super.service(request, response);
     }
 
+    /**
+     * Find the mapping path with the first request. Concurrent first requests wait until the
+     * mapping and the resource init parameter are set.
+     */
+    private void initMapping(HttpServletRequest request) {
+        if (mapping != null) return;
+        synchronized (this) {
+            if (mapping == null) {
+                String path = findMappingPath(request);
+                getService()
+                        .getDeploymentConfiguration()
+                        .getInitParameters()
+                        .setProperty(PARAMETER_VAADIN_RESOURCES, path);
+                mapping = new Mapping(path);
+            }
+        }
+    }
+
     protected String findMappingPath(HttpServletRequest request) {
         return request.getServletPath() + request.getPathInfo();
     }
@@ -72,21 +97,164 @@ public abstract class VaadinLocalServlet extends VaadinServlet {
     protected boolean isLocalStaticResourceRequest(HttpServletRequest request) {
         String pathInfo = request.getPathInfo();
         if (pathInfo == null) return false;
+        Mapping current = mapping;
+        if (current == null) return false;
         String uri = request.getRequestURI();
-        if (uri != null && uri.startsWith(mappingPath + "/VAADIN/")) return true;
-        return false;
+        return uri != null && uri.startsWith(current.vaadinPrefix);
+    }
+
+    /**
+     * Serve a file below /VAADIN from the servlet context or the class path. Conditional requests
+     * are answered with 304.
+     *
+     * @param request
+     * @param response
+     * @return false if the file was not found or the request can't be handled, the request must
+     *     be processed by vaadin
+     * @throws IOException
+     */
+    protected boolean serveLocalStaticResource(
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String method = request.getMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method)) return false;
+
+        Mapping current = mapping;
+        if (current == null) return false;
+        String filename = request.getRequestURI().substring(current.path.length());
+        if (!isSimpleStaticPath(filename)) return false;
+
+        StaticResourceCache.Entry entry = staticResources.get(filename);
+        if (entry == null || !isProductionMode() && isModified(entry)) {
+            URL url = findLocalStaticResource(filename);
+            // directories and not allowed locations are handled by vaadin
+            if (url == null || !isRegularFile(url) || !isAllowedVAADINResourceUrl(request, url))
+                return false;
+            entry = staticResources.load(filename, url);
+        }
+
+        String mimetype = getServletContext().getMimeType(filename);
+        if (mimetype != null) response.setContentType(mimetype);
+        int cacheTime = getCacheTime(filename);
+        response.setHeader("Cache-Control", cacheTime <= 0 ? "no-cache" : "max-age=" + cacheTime);
+        if (entry.getLastModified() > 0)
+            response.setDateHeader("Last-Modified", entry.getLastModified());
+        if (entry.getEtag() != null) response.setHeader("ETag", entry.getEtag());
+
+        if (isNotModified(request, entry)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        if (entry.getLength() >= 0)
+            response.setHeader("Content-Length", String.valueOf(entry.getLength()));
+        if (head) return true;
+
+        OutputStream out = response.getOutputStream();
+        if (entry.getData() != null) {
+            out.write(entry.getData());
+            return true;
+        }
+        try (InputStream is = entry.getUrl().openStream()) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) >= 0) out.write(buffer, 0, len);
+        }
+        return true;
+    }
+
+    /** Only plain paths are served directly, everything else is checked by vaadin. */
+    protected boolean isSimpleStaticPath(String filename) {
+        if (filename.endsWith("/")) return false;
+        if (filename.contains("..") || filename.contains("//")) return false;
+        for (int i = 0; i < filename.length(); i++) {
+            char c = filename.charAt(i);
+            if (c == '%' || c == ';' || c == '\\') return false;
+        }
+        return true;
+    }
+
+    protected URL findLocalStaticResource(String filename) throws IOException {
+        URL url = getServletContext().getResource(filename);
+        if (url != null) return url;
+        ClassLoader loader = getService().getClassLoader();
+        if (loader == null) loader = getClass().getClassLoader();
+        return loader.getResource(filename.substring(1));
+    }
+
+    /**
+     * Return true if the url points to a file and not to a directory.
+     *
+     * @param url
+     * @return false for directories or if it can't be checked
+     */
+    protected boolean isRegularFile(URL url) {
+        String protocol = url.getProtocol();
+        if ("file".equals(protocol)) {
+            try {
+                return Files.isRegularFile(Paths.get(url.toURI()));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return false;
+            }
+        }
+        if ("jar".equals(protocol)) {
+            try {
+                URLConnection con = url.openConnection();
+                if (!(con instanceof JarURLConnection)) return false;
+                JarEntry entry = ((JarURLConnection) con).getJarEntry();
+                return entry != null && !entry.isDirectory();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        // e.g. bundle entries, directories end with a slash
+        return !url.getPath().endsWith("/");
+    }
+
+    protected boolean isProductionMode() {
+        return getService().getDeploymentConfiguration().isProductionMode();
+    }
+
+    private boolean isModified(StaticResourceCache.Entry entry) {
+        try {
+            return StaticResourceCache.getLastModified(entry.getUrl()) != entry.getLastModified();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private boolean isNotModified(HttpServletRequest request, StaticResourceCache.Entry entry) {
+        String noneMatch = request.getHeader("If-None-Match");
+        if (noneMatch != null) {
+            if (entry.getEtag() == null) return false;
+            for (String tag : noneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(entry.getEtag())) return true;
+            }
+            return false;
+        }
+        if (entry.getLastModified() <= 0) return false;
+        try {
+            long since = request.getDateHeader("If-Modified-Since");
+            // http dates have a resolution of seconds
+            return since != -1 && since >= entry.getLastModified() / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
     public String getMappingPath() {
-        return mappingPath;
+        Mapping current = mapping;
+        return current == null ? null : current.path;
     }
 
     protected boolean isLocalUIDL(HttpServletRequest request) {
         String pathInfo = request.getPathInfo();
         if (pathInfo == null) return false;
+        Mapping current = mapping;
+        if (current == null) return false;
         String uri = request.getRequestURI();
-        if (uri != null && uri.startsWith(getMappingPath() + "/UIDL/")) return true;
-        return false;
+        return uri != null && uri.startsWith(current.uidlPrefix);
     }
 
     @Override
@@ -100,4 +268,18 @@ public abstract class VaadinLocalServlet extends VaadinServlet {
     public String getServicePath() {
         return getMappingPath();
     }
+
+    /** Immutable mapping path with the derived prefixes. */
+    private static final class Mapping {
+
+        private final String path;
+        private final String vaadinPrefix;
+        private final String uidlPrefix;
+
+        private Mapping(String path) {
+            this.path = path;
+            this.vaadinPrefix = path + "/VAADIN/";
+            this.uidlPrefix = path + "/UIDL/";
+        }
+    }
 }
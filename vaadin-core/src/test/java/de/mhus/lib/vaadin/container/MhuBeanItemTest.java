@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.lib.vaadin.container;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/** Equality of bean items is based on the bean instance and the property ids. */
+public class MhuBeanItemTest {
+
+    @Test
+    public void testSameBeanIsEqual() {
+        Bean bean = new Bean("a");
+        MhuBeanItem<Bean> item1 = new MhuBeanItem<Bean>(bean);
+        MhuBeanItem<Bean> item2 = new MhuBeanItem<Bean>(bean);
+        assertEquals(item1, item2);
+        assertEquals(item1.hashCode(), item2.hashCode());
+    }
+
+    @Test
+    public void testOtherBeanIsNotEqual() {
+        // the beans are equal, but the items wrap different instances
+        MhuBeanItem<Bean> item1 = new MhuBeanItem<Bean>(new Bean("a"));
+        MhuBeanItem<Bean> item2 = new MhuBeanItem<Bean>(new Bean("a"));
+        assertNotEquals(item1, item2);
+    }
+
+    @Test
+    public void testHashCodeIsStableIfMaterialized() throws Exception {
+        Bean bean = new Bean("a");
+        MhuBeanItem<Bean> item = new MhuBeanItem<Bean>(bean);
+        MhuBeanItem<Bean> lazy = new MhuBeanItem<Bean>(bean);
+        HashSet<MhuBeanItem<Bean>> set = new HashSet<MhuBeanItem<Bean>>();
+        set.add(item);
+        int hash = item.hashCode();
+        // clone creates all properties of the item
+        item.clone();
+        assertEquals(hash, item.hashCode());
+        assertTrue(set.contains(item));
+        assertEquals(item, lazy);
+        assertEquals(lazy, item);
+    }
+
+    @Test
+    public void testOtherPropertiesAreNotEqual() {
+        Bean bean = new Bean("a");
+        MhuBeanItem<Bean> item1 = new MhuBeanItem<Bean>(bean);
+        MhuBeanItem<Bean> item2 = new MhuBeanItem<Bean>(bean);
+        item2.removeItemProperty(item2.getItemPropertyIds().iterator().next());
+        assertFalse(item1.equals(item2));
+    }
+
+    public static class Bean {
+
+        private String name;
+
+        public Bean(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Bean && ((Bean) obj).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+}
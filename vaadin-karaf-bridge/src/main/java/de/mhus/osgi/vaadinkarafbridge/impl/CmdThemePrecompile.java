@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinkarafbridge.impl;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import de.mhus.lib.core.console.ConsoleTable;
+import de.mhus.osgi.api.karaf.AbstractCmd;
+import de.mhus.osgi.vaadinbridge.BundleWatch;
+
+@Command(
+        scope = "vaadin",
+        name = "theme-precompile",
+        description = "Precompile all known themes in background and show the state")
+@Service
+public class CmdThemePrecompile extends AbstractCmd {
+
+    @Option(
+            name = "-l",
+            aliases = "--list",
+            description = "Only list the state, do not start a compilation",
+            required = false)
+    boolean list;
+
+    @Reference private BundleWatch watch;
+
+    @Override
+    public Object execute2() throws Exception {
+
+        if (!list) watch.precompileThemes();
+
+        PrintStream out = System.out;
+        ConsoleTable table = new ConsoleTable(tblOpt);
+        table.setHeaderValues("Stylesheet", "State");
+        for (Map.Entry<String, String> entry : watch.getPrecompileStatus().entrySet())
+            table.addRowValues(entry.getKey(), entry.getValue());
+        table.print(out);
+        out.flush();
+        return null;
+    }
+}
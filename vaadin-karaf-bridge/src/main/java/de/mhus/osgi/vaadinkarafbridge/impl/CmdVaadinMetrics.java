@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinkarafbridge.impl;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import de.mhus.lib.core.console.ConsoleTable;
+import de.mhus.osgi.api.karaf.AbstractCmd;
+import de.mhus.osgi.vaadinbridge.VaadinBridgeMetrics;
+
+@Command(
+        scope = "vaadin",
+        name = "metrics",
+        description = "Show counters, durations (microseconds) and slow paths of /VAADIN serving")
+@Service
+public class CmdVaadinMetrics extends AbstractCmd {
+
+    @Option(
+            name = "-r",
+            aliases = "--reset",
+            description = "Reset all metrics after printing",
+            required = false)
+    boolean reset;
+
+    @Reference private VaadinBridgeMetrics metrics;
+
+    @Override
+    public Object execute2() throws Exception {
+
+        PrintStream out = System.out;
+
+        ConsoleTable table = new ConsoleTable(tblOpt);
+        table.setHeaderValues("Counter", "Value");
+        for (Map.Entry<String, Long> entry : metrics.getCounters().entrySet())
+            table.addRowValues(entry.getKey(), entry.getValue());
+        table.print(out);
+        out.println();
+
+        table = new ConsoleTable(tblOpt);
+        table.setHeaderValues("Duration", "Count", "Min", "Mean", "P50", "P95", "P99", "Max");
+        for (String name : metrics.getHistogramNames()) {
+            long[] h = metrics.getHistogram(name);
+            if (h == null) continue;
+            table.addRowValues(name, h[0], h[1], h[2], h[3], h[4], h[5], h[6]);
+        }
+        table.print(out);
+        out.println();
+
+        table = new ConsoleTable(tblOpt);
+        table.setHeaderValues("Slow Path", "Max");
+        for (Map.Entry<String, Long> entry : metrics.getSlowPaths().entrySet())
+            table.addRowValues(entry.getKey(), entry.getValue());
+        table.print(out);
+        out.flush();
+
+        if (reset) metrics.reset();
+        return null;
+    }
+}
@@ -16,6 +16,7 @@
 package de.mhus.osgi.vaadinkarafbridge.impl;
 
 import java.io.PrintStream;
+import java.util.Map;
 
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
@@ -23,6 +24,7 @@ import org.apache.karaf.shell.api.action.lifecycle.Service;
 
 import de.mhus.lib.core.console.ConsoleTable;
 import de.mhus.osgi.api.karaf.AbstractCmd;
+import de.mhus.osgi.vaadinbridge.BundleWatch;
 import de.mhus.osgi.vaadinbridge.VaadinConfigurableResourceProviderAdmin;
 
 @Command(scope = "vaadin", name = "resource-list", description = "List all resource providers")
@@ -31,12 +33,15 @@ public class CmdVaadinResourceList extends AbstractCmd {
 
     @Reference private VaadinConfigurableResourceProviderAdmin provider;
 
+    @Reference private BundleWatch watch;
+
     @Override
     public Object execute2() throws Exception {
         PrintStream out = System.out;
         // session.getConsole();
         ConsoleTable table = new ConsoleTable(tblOpt);
-        table.setHeaderValues("Bundle", "Resources");
+        Map<String, Long> scanTimes = watch.getScanTimes();
+        table.setHeaderValues("Bundle", "Resources", "Scan");
         for (String s : provider.getResourceBundles()) {
 
             StringBuilder res = new StringBuilder();
@@ -46,9 +51,12 @@ public class CmdVaadinResourceList extends AbstractCmd {
                 res.append(p);
                 first = false;
             }
-            table.addRowValues(s, res.toString());
+            Long scan = scanTimes.get(s);
+            table.addRowValues(s, res.toString(), scan == null ? "" : scan + " ms");
         }
         table.print(out);
+        if (watch.getLastRefreshTime() >= 0)
+            out.println("Last refresh: " + watch.getLastRefreshTime() + " ms");
         out.flush();
         return null;
     }
@@ -15,6 +15,8 @@
  */
 package de.mhus.osgi.vaadinbridge;
 
+import java.util.Map;
+
 public interface BundleWatch {
 
     void refreshAll();
@@ -22,4 +24,28 @@ public interface BundleWatch {
     void setEnabled(boolean enabled);
 
     boolean isEnabled();
+
+    /** Queue the compilation of all known theme stylesheets in background. */
+    void precompileThemes();
+
+    /**
+     * Return the state of the background theme compilation.
+     *
+     * @return Map of stylesheet to state
+     */
+    Map<String, String> getPrecompileStatus();
+
+    /**
+     * Return the duration of the last scan per bundle in milliseconds.
+     *
+     * @return Map of bundle name to milliseconds
+     */
+    Map<String, Long> getScanTimes();
+
+    /**
+     * Return the duration of the last full refresh in milliseconds.
+     *
+     * @return Milliseconds or -1 if not done
+     */
+    long getLastRefreshTime();
 }
@@ -15,10 +15,17 @@
  */
 package de.mhus.osgi.vaadinbridge;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -28,14 +35,32 @@ import org.osgi.framework.Bundle;
 
 public class Resource {
 
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // transfer buffer of each request thread, reused by the next request
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
     private URL url;
     private Bundle bundle;
+    private long contentLength = -1;
 
     public Resource(Bundle bundle, URL url) {
         this.bundle = bundle;
         this.url = url;
     }
 
+    /**
+     * Create a resource with known size.
+     *
+     * @param bundle
+     * @param url
+     * @param contentLength Size in bytes or -1 if unknown
+     */
+    public Resource(Bundle bundle, URL url, long contentLength) {
+        this.bundle = bundle;
+        this.url = url;
+        this.contentLength = contentLength;
+    }
+
     public String getMimeType(ServletContext context) throws ServletException, IOException {
         String path = getPath();
         if (path == null) return "text/plain";
@@ -72,8 +97,127 @@ public class Resource {
 
     public void writeToStream(OutputStream outputStream) throws IOException {
 
-        InputStream stream = openStream();
-        IOUtils.copy(stream, outputStream);
+        File file = getFile();
+        if (file != null) {
+            transfer(file, 0, file.length(), outputStream);
+            return;
+        }
+        try (InputStream stream = openStream()) {
+            IOUtils.copy(stream, outputStream);
+        }
+    }
+
+    /**
+     * Return the file if the resource is located in the local file system, e.g. compiled css.
+     *
+     * @return The file or null
+     */
+    public File getFile() {
+        if (url == null || !"file".equals(url.getProtocol())) return null;
+        File file;
+        try {
+            file = new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Write a part of the file.
+     *
+     * @param file
+     * @param position Start position
+     * @param count Number of bytes
+     * @param outputStream
+     * @throws IOException
+     */
+    public static void transfer(File file, long position, long count, OutputStream outputStream)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            transfer(channel, position, count, outputStream);
+        }
+    }
+
+    /**
+     * Write a part of the channel. The servlet output is a stream, so the data is copied through
+     * a buffer, it is allocated once per thread.
+     *
+     * @param channel
+     * @param position Start position
+     * @param count Number of bytes
+     * @param outputStream
+     * @throws IOException
+     */
+    public static void transfer(
+            FileChannel channel, long position, long count, OutputStream outputStream)
+            throws IOException {
+        ByteBuffer buffer = buffers.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffers.set(buffer);
+        }
+        while (count > 0) {
+            buffer.clear();
+            if (count < buffer.capacity()) buffer.limit((int) count);
+            int len = channel.read(buffer, position);
+            if (len < 0) break;
+            outputStream.write(buffer.array(), 0, len);
+            position += len;
+            count -= len;
+        }
+    }
+
+    /**
+     * Return the size of the content if the underlying connection knows it.
+     *
+     * @return Size in bytes or -1 if unknown
+     */
+    public long getContentLength() {
+        if (url == null) return -1;
+        if (contentLength >= 0) return contentLength;
+        File file = getFile();
+        if (file != null) return file.length();
+        contentLength = getContentLength(url);
+        return contentLength;
+    }
+
+    /**
+     * Ask the connection of the url for the size of the content. The connection of bundle entries
+     * opens the stream, so it is closed afterwards.
+     *
+     * @param url
+     * @return Size in bytes or -1 if unknown
+     */
+    public static long getContentLength(URL url) {
+        try {
+            URLConnection con = url.openConnection();
+            try (InputStream is = con.getInputStream()) {
+                return con.getContentLengthLong();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read the content into memory. If the content is larger then maxSize null will be returned.
+     *
+     * @param maxSize Maximum size in bytes
+     * @return The content or null if too large
+     * @throws IOException
+     */
+    public byte[] toByteArray(int maxSize) throws IOException {
+        try (InputStream stream = openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = stream.read(buffer)) >= 0) {
+                if (out.size() + len > maxSize) return null;
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        }
     }
 
     public Bundle getBundle() {
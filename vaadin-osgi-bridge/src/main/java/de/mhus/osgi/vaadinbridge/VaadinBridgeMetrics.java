@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge;
+
+import java.util.Map;
+
+/**
+ * Metrics of the /VAADIN resource serving. The service is also registered as MXBean with the name
+ * {@value #OBJECT_NAME}. Durations are measured in microseconds.
+ */
+public interface VaadinBridgeMetrics {
+
+    String OBJECT_NAME = "de.mhus.osgi.vaadinbridge:type=Metrics";
+
+    /**
+     * Return all counters, e.g. requests, cache hits and bytes sent.
+     *
+     * @return Map of counter name to value
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Return the names of all histograms, e.g. the request duration or the lookup duration per
+     * provider.
+     *
+     * @return Names of the histograms
+     */
+    String[] getHistogramNames();
+
+    /**
+     * Return the summary of the histogram: count, min, mean, p50, p95, p99 and max. Percentiles are
+     * the upper bound of the bucket containing them.
+     *
+     * @param name Name of the histogram
+     * @return The summary or null if not known
+     */
+    long[] getHistogram(String name);
+
+    /**
+     * Return the slowest requests since the last reset.
+     *
+     * @return Map of path to the longest duration, sorted by duration descending
+     */
+    Map<String, Long> getSlowPaths();
+
+    /** Reset all counters, histograms and slow paths. */
+    void reset();
+}
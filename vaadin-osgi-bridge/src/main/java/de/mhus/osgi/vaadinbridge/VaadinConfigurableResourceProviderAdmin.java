@@ -15,6 +15,8 @@
  */
 package de.mhus.osgi.vaadinbridge;
 
+import java.util.Map;
+
 public interface VaadinConfigurableResourceProviderAdmin {
 
     public String[] getResourcePathes(String bundle);
@@ -25,5 +27,17 @@ public interface VaadinConfigurableResourceProviderAdmin {
 
     public void addResource(String bundle, String... pathes);
 
+    /**
+     * Add or update the resources of many bundles at once. Like {@link #addResource(String,
+     * String...)} already registered bundles keep their position, new bundles are added behind all
+     * others. Implementations should update the routing only one time.
+     *
+     * @param resources Map of bundle name to pathes, in order of registration
+     */
+    public default void addResources(Map<String, String[]> resources) {
+        for (Map.Entry<String, String[]> entry : resources.entrySet())
+            addResource(entry.getKey(), entry.getValue());
+    }
+
     public void setDebug(boolean debug);
 }
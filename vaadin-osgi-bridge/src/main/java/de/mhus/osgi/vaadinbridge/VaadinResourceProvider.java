@@ -24,4 +24,16 @@ public interface VaadinResourceProvider {
     String getName();
 
     long getLastModified(String name);
+
+    /**
+     * Find and return the resource in one step. Providers should overwrite this to avoid doing the
+     * routing twice, once in canHandle() and again in getResource().
+     *
+     * @param name
+     * @return The resource or null if not handled by this provider
+     */
+    default Resource resolve(String name) {
+        if (!canHandle(name)) return null;
+        return getResource(name);
+    }
 }
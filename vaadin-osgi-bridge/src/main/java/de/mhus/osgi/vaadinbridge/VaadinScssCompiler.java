@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge;
+
+import java.util.Map;
+
+public interface VaadinScssCompiler {
+
+    /**
+     * Compile the stylesheet if not already done. The call blocks until the css is available.
+     *
+     * @param name Path of the css file, e.g. /themes/mytheme/styles.css
+     * @return true if the css is available
+     */
+    boolean compile(String name);
+
+    /**
+     * Return the duration of the last compilation per stylesheet in milliseconds.
+     *
+     * @return Map of stylesheet to milliseconds
+     */
+    Map<String, Long> getCompileTimes();
+}
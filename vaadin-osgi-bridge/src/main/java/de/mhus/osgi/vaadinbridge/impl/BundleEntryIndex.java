@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+
+import de.mhus.osgi.vaadinbridge.Resource;
+
+/**
+ * Index of all entries below /VAADIN of a bundle. The index is created once for a version of the
+ * bundle, after that the existence of a resource can be checked without asking the bundle.
+ */
+public class BundleEntryIndex {
+
+    public static final String ROOT = "/VAADIN";
+
+    private final long bundleId;
+    private final long lastModified;
+    private final Map<String, Entry> entries;
+
+    private BundleEntryIndex(long bundleId, long lastModified, Map<String, Entry> entries) {
+        this.bundleId = bundleId;
+        this.lastModified = lastModified;
+        this.entries = entries;
+    }
+
+    /**
+     * Walk recursive through all entries of the bundle below /VAADIN.
+     *
+     * @param bundle
+     * @return The index, could be empty
+     */
+    public static BundleEntryIndex create(Bundle bundle) {
+        HashMap<String, Entry> entries = new HashMap<String, Entry>();
+        long lastModified = bundle.getLastModified();
+        Enumeration<URL> list = bundle.findEntries(ROOT, "*", true);
+        if (list != null) {
+            while (list.hasMoreElements()) {
+                URL url = list.nextElement();
+                String path = url.getPath();
+                if (path.endsWith("/")) continue;
+                int pos = path.indexOf(ROOT + "/");
+                if (pos < 0) continue;
+                path = path.substring(pos + ROOT.length());
+                entries.put(path, new Entry(url, lastModified));
+            }
+        }
+        return new BundleEntryIndex(bundle.getBundleId(), lastModified, entries);
+    }
+
+    /**
+     * Return true if the index was created for this version of the bundle.
+     *
+     * @param bundle
+     * @return true if still valid
+     */
+    public boolean isValid(Bundle bundle) {
+        return bundle.getBundleId() == bundleId && bundle.getLastModified() == lastModified;
+    }
+
+    /**
+     * Return the entry of the path.
+     *
+     * @param path Path below /VAADIN
+     * @return The entry or null if not exists
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static class Entry {
+
+        private static final long UNKNOWN = -2;
+
+        private final URL url;
+        private volatile long size = UNKNOWN;
+        private final long lastModified;
+
+        Entry(URL url, long lastModified) {
+            this.url = url;
+            this.lastModified = lastModified;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * Return the size of the entry. The size is read at the first call, not while creating the
+         * index.
+         *
+         * @return Size in bytes or -1 if unknown
+         */
+        public long getSize() {
+            long current = size;
+            if (current == UNKNOWN) {
+                current = Resource.getContentLength(url);
+                size = current;
+            }
+            return current;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
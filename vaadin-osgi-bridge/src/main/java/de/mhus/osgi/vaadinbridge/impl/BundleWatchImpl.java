@@ -15,9 +15,30 @@
  */
 package de.mhus.osgi.vaadinbridge.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.osgi.framework.Bundle;
@@ -27,16 +48,17 @@ import org.osgi.framework.BundleListener;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
-import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.cm.ManagedService;
 import org.osgi.service.component.ComponentContext;
+import org.osgi.util.tracker.ServiceTracker;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import de.mhus.osgi.vaadinbridge.BundleWatch;
 import de.mhus.osgi.vaadinbridge.VaadinConfigurableResourceProviderAdmin;
+import de.mhus.osgi.vaadinbridge.VaadinScssCompiler;
 
 /*
 vaadinBootstrap.js
@@ -51,14 +73,89 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
 
     private static final Logger log = Logger.getLogger(BundleWatchImpl.class.getName());
     private BundleContext context;
-    private boolean enabled = true;
+    private volatile boolean enabled = true;
     private ServiceRegistration<?> configUpdaterReg;
+    // the services are used by the worker threads, tracked to get them once
+    private ServiceTracker<
+                    VaadinConfigurableResourceProviderAdmin,
+                    VaadinConfigurableResourceProviderAdmin>
+            adminTracker;
+    private ServiceTracker<VaadinScssCompiler, VaadinScssCompiler> compilerTracker;
     private static final String CONFIG_PID = "de.mhus.osgi.vaadinbridge";
+    private static final int PRECOMPILE_QUEUE_SIZE = 100;
+    private ThreadPoolExecutor precompiler;
+    private final Set<String> themes = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> precompileStatus = new ConcurrentHashMap<String, String>();
+    private ThreadPoolExecutor scanner;
+    private final Map<String, Long> scanTimes = new ConcurrentHashMap<String, Long>();
+    private volatile long lastRefreshTime = -1;
+    private static final long EVENT_DELAY = 500;
+    private static final long EVENT_MAX_DELAY = 5000;
+    private ScheduledThreadPoolExecutor events;
+    private final LinkedHashSet<Bundle> pendingBundles = new LinkedHashSet<Bundle>();
+    private boolean pendingRefresh = false;
+    private boolean flushScheduled = false;
+    private long firstEventTime;
+    private long lastEventTime;
 
     @Activate
     public void doActivate(ComponentContext ctx) {
         log.info("Start");
         context = ctx.getBundleContext();
+        adminTracker =
+                new ServiceTracker<
+                        VaadinConfigurableResourceProviderAdmin,
+                        VaadinConfigurableResourceProviderAdmin>(
+                        context, VaadinConfigurableResourceProviderAdmin.class, null);
+        adminTracker.open();
+        compilerTracker =
+                new ServiceTracker<VaadinScssCompiler, VaadinScssCompiler>(
+                        context, VaadinScssCompiler.class, null);
+        compilerTracker.open();
+        // one thread is enough, the compiler itself is not able to work in parallel
+        precompiler =
+                new ThreadPoolExecutor(
+                        1,
+                        1,
+                        60,
+                        TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(PRECOMPILE_QUEUE_SIZE),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "vaadin-theme-precompile");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        scanner =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "vaadin-bundle-scan");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+        scanner.allowCoreThreadTimeOut(true);
+        events =
+                new ScheduledThreadPoolExecutor(
+                        1,
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "vaadin-bundle-events");
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
         context.addBundleListener(this);
         context.addServiceListener(this);
 
@@ -69,7 +166,7 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
                 context.registerService(
                         ManagedService.class.getName(), new ConfigUpdater(this), properties);
 
-        if (enabled) refreshAll();
+        if (enabled) enqueue(null);
     }
 
     @Deactivate
@@ -78,6 +175,11 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
         configUpdaterReg.unregister();
         context.removeBundleListener(this);
         context.removeServiceListener(this);
+        precompiler.shutdownNow();
+        scanner.shutdownNow();
+        events.shutdownNow();
+        adminTracker.close();
+        compilerTracker.close();
     }
 
     @Override
@@ -86,24 +188,98 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
         if (!enabled) return;
 
         if (event.getType() == BundleEvent.STARTED) {
-            doBundle(event.getBundle());
+            enqueue(event.getBundle());
         }
     }
 
-    public void doBundle(Bundle bundle) {
+    /**
+     * Queue the bundle for processing. Events are collected until no new event arrived for
+     * EVENT_DELAY milliseconds (but at most EVENT_MAX_DELAY) and then processed as one batch.
+     *
+     * @param bundle The bundle or null for a full refresh
+     */
+    protected void enqueue(Bundle bundle) {
+        synchronized (pendingBundles) {
+            if (bundle == null) pendingRefresh = true;
+            else pendingBundles.add(bundle);
+            long now = System.currentTimeMillis();
+            lastEventTime = now;
+            if (!flushScheduled) {
+                firstEventTime = now;
+                flushScheduled = true;
+                scheduleFlush(EVENT_DELAY);
+            }
+        }
+    }
 
-        log.fine("Bundle: " + bundle.getSymbolicName());
-        Enumeration<String> list = bundle.getEntryPaths("/VAADIN");
-        if (list == null) return;
+    private void scheduleFlush(long delay) {
+        try {
+            events.schedule(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    },
+                    delay,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // deactivated
+            flushScheduled = false;
+        }
+    }
+
+    private void flush() {
+        boolean refresh;
+        ArrayList<Bundle> bundles;
+        synchronized (pendingBundles) {
+            long now = System.currentTimeMillis();
+            long quiet = now - lastEventTime;
+            if (quiet < EVENT_DELAY && now - firstEventTime < EVENT_MAX_DELAY) {
+                scheduleFlush(EVENT_DELAY - quiet);
+                return;
+            }
+            refresh = pendingRefresh;
+            bundles = new ArrayList<Bundle>(pendingBundles);
+            pendingRefresh = false;
+            pendingBundles.clear();
+            flushScheduled = false;
+        }
+        try {
+            if (refresh) {
+                refreshAll();
+            } else {
+                // could be stopped in the meantime
+                Iterator<Bundle> iter = bundles.iterator();
+                while (iter.hasNext()) if (iter.next().getState() != Bundle.ACTIVE) iter.remove();
+                processBundles(bundles);
+            }
+        } catch (Throwable t) {
+            log.warning("can't process bundle events " + t);
+        }
+    }
+
+    private VaadinConfigurableResourceProviderAdmin findAdmin() {
+        return adminTracker.getService();
+    }
 
-        @SuppressWarnings("unchecked")
-        ServiceReference<VaadinConfigurableResourceProviderAdmin> sr =
-                (ServiceReference<VaadinConfigurableResourceProviderAdmin>)
-                        context.getServiceReference(
-                                VaadinConfigurableResourceProviderAdmin.class.getName());
-        if (sr == null) return;
-        VaadinConfigurableResourceProviderAdmin admin = context.getService(sr);
-        if (admin == null) return;
+    private static String getBundleName(Bundle bundle) {
+        return bundle.getSymbolicName() == null
+                ? "" + bundle.getBundleId()
+                : bundle.getSymbolicName();
+    }
+
+    /**
+     * Collect the resource pathes of the bundle. The method does not change the admin and can be
+     * called in parallel.
+     *
+     * @param bundle
+     * @return The pathes or null if the bundle has no vaadin resources
+     */
+    protected String[] scanBundle(Bundle bundle) {
+        long start = System.currentTimeMillis();
+        Enumeration<String> list = bundle.getEntryPaths("/VAADIN");
+        if (list == null) return null;
 
         LinkedList<String> resources = new LinkedList<String>();
         while (list.hasMoreElements()) {
@@ -140,37 +316,153 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
             }
         }
 
+        scanTimes.put(getBundleName(bundle), System.currentTimeMillis() - start);
         log.info(bundle.getSymbolicName() + ": " + resources);
-        if (resources.size() > 0) {
-            String[] current = admin.getResourcePathes(bundle.getSymbolicName());
-            if (current != null) {
-                admin.removeResource(bundle.getSymbolicName());
-            }
-            try {
-                admin.addResource(
-                        bundle.getSymbolicName() == null
-                                ? "" + bundle.getBundleId()
-                                : bundle.getSymbolicName(),
-                        resources.toArray(new String[resources.size()]));
-            } catch (Throwable t) {
-                log.warning("can't add resources of bundle " + bundle + " " + t);
-            }
+        if (resources.size() == 0) return null;
+        return resources.toArray(new String[resources.size()]);
+    }
+
+    /**
+     * Find all themes with a styles.scss in the bundle and queue them for precompilation.
+     *
+     * @param bundle
+     */
+    protected void findThemes(Bundle bundle) {
+        Enumeration<String> list = bundle.getEntryPaths("/VAADIN/themes");
+        if (list == null) return;
+        while (list.hasMoreElements()) {
+            String path = list.nextElement();
+            if (!path.endsWith("/")) continue;
+            if (bundle.getEntry(path + "styles.scss") == null) continue;
+            String css = path.substring("VAADIN".length()) + "styles.css";
+            if (!css.startsWith("/")) css = "/" + css;
+            themes.add(css);
+            precompile(css);
         }
     }
 
-    @Override
-    public void refreshAll() {
-        for (Bundle bundle : context.getBundles()) {
-            if (bundle.getState() == Bundle.ACTIVE) {
+    protected void precompile(final String css) {
+        precompileStatus.put(css, "queued");
+        try {
+            precompiler.execute(createPrecompileTask(css));
+        } catch (RejectedExecutionException e) {
+            precompileStatus.put(css, "rejected");
+        }
+    }
+
+    private Runnable createPrecompileTask(final String css) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                VaadinScssCompiler compiler = findScssCompiler();
+                if (compiler == null) {
+                    precompileStatus.put(css, "no compiler");
+                    return;
+                }
+                precompileStatus.put(css, "compiling");
+                long start = System.currentTimeMillis();
                 try {
-                    doBundle(bundle);
+                    boolean ok = compiler.compile(css);
+                    long time = System.currentTimeMillis() - start;
+                    precompileStatus.put(css, (ok ? "ok " : "failed ") + time + " ms");
                 } catch (Throwable t) {
-                    log.warning("can't refresh bundle " + bundle + " " + t);
+                    log.warning("can't precompile " + css + " " + t);
+                    precompileStatus.put(css, "error " + t);
                 }
             }
+        };
+    }
+
+    private VaadinScssCompiler findScssCompiler() {
+        return compilerTracker.getService();
+    }
+
+    @Override
+    public void precompileThemes() {
+        for (String css : themes) precompile(css);
+    }
+
+    @Override
+    public Map<String, String> getPrecompileStatus() {
+        return new TreeMap<String, String>(precompileStatus);
+    }
+
+    @Override
+    public void refreshAll() {
+        ArrayList<Bundle> bundles = new ArrayList<Bundle>();
+        for (Bundle bundle : context.getBundles()) {
+            if (bundle.getState() == Bundle.ACTIVE) bundles.add(bundle);
+        }
+        long start = System.currentTimeMillis();
+        if (processBundles(bundles)) {
+            lastRefreshTime = System.currentTimeMillis() - start;
+            log.info("Refreshed " + bundles.size() + " bundles in " + lastRefreshTime + " ms");
         }
     }
 
+    /**
+     * Scan the bundles in parallel and apply the result as one batch to the admin.
+     *
+     * @param bundles
+     * @return false if the admin is not available
+     */
+    protected boolean processBundles(Collection<Bundle> bundles) {
+        VaadinConfigurableResourceProviderAdmin admin = findAdmin();
+        if (admin == null) return false;
+        if (bundles.isEmpty()) return true;
+
+        LinkedHashMap<Bundle, Future<String[]>> futures =
+                new LinkedHashMap<Bundle, Future<String[]>>();
+        for (final Bundle bundle : bundles) {
+            try {
+                futures.put(
+                        bundle,
+                        scanner.submit(
+                                new Callable<String[]>() {
+                                    @Override
+                                    public String[] call() throws Exception {
+                                        return scanBundle(bundle);
+                                    }
+                                }));
+            } catch (RejectedExecutionException e) {
+                log.warning("can't scan bundle " + bundle + " " + e);
+            }
+        }
+
+        // keep the order of the bundles, the first registered path wins
+        LinkedHashMap<String, String[]> resources = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<Bundle, Future<String[]>> entry : futures.entrySet()) {
+            try {
+                String[] pathes = entry.getValue().get();
+                if (pathes != null) resources.put(getBundleName(entry.getKey()), pathes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (ExecutionException e) {
+                log.warning("can't refresh bundle " + entry.getKey() + " " + e.getCause());
+            }
+        }
+
+        try {
+            admin.addResources(resources);
+        } catch (Throwable t) {
+            log.warning("can't add resources " + t);
+        }
+
+        for (Bundle bundle : futures.keySet()) findThemes(bundle);
+        return true;
+    }
+
+    @Override
+    public Map<String, Long> getScanTimes() {
+        return new TreeMap<String, Long>(scanTimes);
+    }
+
+    @Override
+    public long getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+
     @Override
     public void serviceChanged(ServiceEvent event) {
 
@@ -178,12 +470,18 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
 
         try {
             if (event.getType() != ServiceEvent.REGISTERED) return;
-            Object service = context.getService(event.getServiceReference());
-            if (service == null) return;
-            if (!(service instanceof VaadinConfigurableResourceProviderAdmin)) return;
+            // check the interfaces without getting the service
+            Object classes = event.getServiceReference().getProperty(Constants.OBJECTCLASS);
+            if (!(classes instanceof String[])) return;
+            List<String> names = Arrays.asList((String[]) classes);
+            if (names.contains(VaadinScssCompiler.class.getName())) {
+                log.info("Scss-Compiler registered");
+                precompileThemes();
+            }
+            if (!names.contains(VaadinConfigurableResourceProviderAdmin.class.getName())) return;
 
             log.info("Admin-Service registered");
-            refreshAll();
+            enqueue(null);
         } catch (Throwable t) {
             t.printStackTrace(); // TODO log
         }
@@ -193,7 +491,7 @@ public class BundleWatchImpl implements BundleWatch, BundleListener, ServiceList
     public void setEnabled(boolean enabled) {
         boolean old = this.enabled;
         this.enabled = enabled;
-        if (!old && enabled) refreshAll();
+        if (!old && enabled) enqueue(null);
     }
 
     @Override
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Parser for the http Range header, see RFC 7233. Only the unit 'bytes' is supported. */
+public class ByteRanges {
+
+    /** More ranges are ignored and the full content will be delivered. */
+    public static final int MAX_RANGES = 16;
+
+    /**
+     * Parse the header. Every range is returned as array of first and last position (inclusive).
+     *
+     * @param header The value of the Range header
+     * @param length The length of the content
+     * @return null if the header is missing or invalid and should be ignored, an empty list if no
+     *     range is satisfiable
+     */
+    public static List<long[]> parse(String header, long length) {
+        if (header == null || length < 0) return null;
+        header = header.trim();
+        if (!header.startsWith("bytes=")) return null;
+        String[] parts = header.substring(6).split(",");
+        if (parts.length > MAX_RANGES) return null;
+
+        ArrayList<long[]> out = new ArrayList<long[]>(parts.length);
+        try {
+            for (String part : parts) {
+                part = part.trim();
+                int pos = part.indexOf('-');
+                if (pos < 0) return null;
+                String first = part.substring(0, pos).trim();
+                String last = part.substring(pos + 1).trim();
+                long start;
+                long end;
+                if (first.length() == 0) {
+                    // suffix range, the last n bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) return null;
+                    if (suffix == 0 || length == 0) continue;
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.length() == 0 ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start < 0 || end < start) return null;
+                    if (start >= length) continue;
+                    end = Math.min(end, length - 1);
+                }
+                out.add(new long[] {start, end});
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return out;
+    }
+}
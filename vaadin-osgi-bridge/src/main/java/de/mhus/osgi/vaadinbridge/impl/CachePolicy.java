@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Rules to find the Cache-Control header for a resource path. The rules are checked in order, the
+ * first matching rule wins. Patterns are globs, '*' matches inside of a path segment and '**'
+ * matches over segments.
+ *
+ * <p>Configuration by the ManagedService 'de.mhus.osgi.vaadinbridge':
+ *
+ * <pre>
+ * cache.rule.0=/**&#47;*.cache.*|public, max-age=31536000, immutable
+ * cache.rule.1=/themes/**&#47;*.png|public, max-age=86400
+ * cache.default=public, no-cache
+ * </pre>
+ */
+public class CachePolicy {
+
+    public static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    public static final String REVALIDATE = "public, no-cache";
+    public static final String RULE_PREFIX = "cache.rule.";
+    public static final String DEFAULT = "cache.default";
+
+    private static final Logger log = Logger.getLogger(CachePolicy.class.getName());
+
+    private final List<Rule> rules;
+    private final String defaultValue;
+
+    public CachePolicy(List<Rule> rules, String defaultValue) {
+        this.rules = new ArrayList<Rule>(rules);
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * The default policy. GWT output with fingerprint (*.cache.*) is immutable, the nocache
+     * bootstrap and all other resources must be revalidated.
+     *
+     * @return The default policy
+     */
+    public static CachePolicy createDefault() {
+        ArrayList<Rule> rules = new ArrayList<Rule>();
+        rules.add(new Rule("/**/*.nocache.*", REVALIDATE));
+        rules.add(new Rule("/**/*.cache.*", IMMUTABLE));
+        return new CachePolicy(rules, REVALIDATE);
+    }
+
+    /**
+     * Create the policy from the configuration. If no rule is configured the default rules are
+     * used.
+     *
+     * @param properties
+     * @return The policy
+     */
+    public static CachePolicy fromProperties(Dictionary<String, ?> properties) {
+        CachePolicy def = createDefault();
+        if (properties == null) return def;
+        ArrayList<Rule> rules = new ArrayList<Rule>();
+        for (int i = 0; ; i++) {
+            Object value = properties.get(RULE_PREFIX + i);
+            if (value == null) break;
+            String rule = String.valueOf(value);
+            int pos = rule.indexOf('|');
+            if (pos < 0) {
+                log.warning("Ignore malformed cache rule " + rule);
+                continue;
+            }
+            rules.add(new Rule(rule.substring(0, pos).trim(), rule.substring(pos + 1).trim()));
+        }
+        if (rules.isEmpty()) rules.addAll(def.rules);
+        Object value = properties.get(DEFAULT);
+        return new CachePolicy(
+                rules, value == null ? def.defaultValue : String.valueOf(value).trim());
+    }
+
+    /**
+     * Return the Cache-Control value for the path.
+     *
+     * @param path
+     * @return The header value or null if no header should be sent
+     */
+    public String getCacheControl(String path) {
+        if (path != null) {
+            for (Rule rule : rules) if (rule.matches(path)) return rule.getValue();
+        }
+        return defaultValue == null || defaultValue.length() == 0 ? null : defaultValue;
+    }
+
+    public List<Rule> getRules() {
+        return new ArrayList<Rule>(rules);
+    }
+
+    public String getDefault() {
+        return defaultValue;
+    }
+
+    public static class Rule {
+
+        private final String glob;
+        private final Pattern pattern;
+        private final String value;
+
+        public Rule(String glob, String value) {
+            this.glob = glob;
+            this.pattern = Pattern.compile(toRegex(glob));
+            this.value = value;
+        }
+
+        public boolean matches(String path) {
+            return pattern.matcher(path).matches();
+        }
+
+        public String getGlob() {
+            return glob;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        i++;
+                        // '/**/' matches also a single '/'
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                            i++;
+                            out.append("(?:.*/)?");
+                        } else out.append(".*");
+                    } else out.append("[^/]*");
+                } else if (c == '?') out.append("[^/]");
+                else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) out.append('\\').append(c);
+                else out.append(c);
+            }
+            return out.toString();
+        }
+    }
+}
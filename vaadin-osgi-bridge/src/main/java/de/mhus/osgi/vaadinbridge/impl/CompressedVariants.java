@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import de.mhus.osgi.vaadinbridge.Resource;
+
+/**
+ * Creates and stores compressed variants of resources in the local cache directory. The variants
+ * are created lazy at the first request and named by the hash of the content (or the cache key if
+ * the content is not in memory). Therefore they are never stale and survive a cleanup of the scss
+ * cache. Variants of changed content are never requested again, to remove them the size of the
+ * directory is limited, the least recently used files are deleted first.
+ *
+ * <p>Variants are returned as open channels, a variant deleted by {@link #prune()} while it is
+ * sent is still readable by the open channel.
+ */
+public class CompressedVariants {
+
+    public static final String GZIP = "gzip";
+    public static final int MIN_SIZE = 256;
+    public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+    /** Minimum time between two updates of the last used time of a file. */
+    private static final long TOUCH_INTERVAL = 60000;
+
+    private static final Logger log = Logger.getLogger(CompressedVariants.class.getName());
+
+    private final File dir;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+
+    public CompressedVariants(File dir) {
+        this(dir, DEFAULT_MAX_SIZE);
+    }
+
+    public CompressedVariants(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        dir.mkdirs();
+        size.set(scan(null));
+        if (size.get() > maxSize) prune();
+    }
+
+    /**
+     * Open the gzip variant of the resource, create it if not exists.
+     *
+     * @param res The resource
+     * @param entry The cached content or null
+     * @param key The cache key of the resource
+     * @return The opened compressed file, the caller must close it
+     * @throws IOException
+     */
+    public FileChannel openGzip(Resource res, ResourceCache.Entry entry, String key)
+            throws IOException {
+        String hash =
+                entry != null
+                        ? entry.getEtag()
+                        : ResourceCache.createEtag(key.getBytes(StandardCharsets.UTF_8));
+        File file = new File(dir, hash.substring(1, hash.length() - 1) + ".gz");
+        FileChannel channel = open(file);
+        if (channel != null) {
+            long now = System.currentTimeMillis();
+            if (now - file.lastModified() > TOUCH_INTERVAL) file.setLastModified(now);
+            return channel;
+        }
+
+        File tmp = File.createTempFile(".gz", ".tmp", dir);
+        try (OutputStream out =
+                new GZIPOutputStream(new FileOutputStream(tmp), 8192) {
+                    {
+                        def.setLevel(Deflater.BEST_COMPRESSION);
+                    }
+                }) {
+            if (entry != null) out.write(entry.getData());
+            else res.writeToStream(out);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        long len = tmp.length();
+        // locked against prune and concurrent creation of the same variant
+        synchronized (this) {
+            boolean created = !file.exists();
+            Files.move(
+                    tmp.toPath(),
+                    file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (created) size.addAndGet(len);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        if (size.get() > maxSize) prune();
+        return channel;
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Delete the least recently used variants until the directory is filled to three quarters of
+     * the maximum size.
+     */
+    public synchronized void prune() {
+        ArrayList<File> files = new ArrayList<File>();
+        long total = scan(files);
+        if (total > maxSize) {
+            Collections.sort(
+                    files,
+                    new Comparator<File>() {
+                        @Override
+                        public int compare(File o1, File o2) {
+                            return Long.compare(o1.lastModified(), o2.lastModified());
+                        }
+                    });
+            long limit = maxSize / 4 * 3;
+            int cnt = 0;
+            for (File file : files) {
+                if (total <= limit) break;
+                long len = file.length();
+                if (file.delete()) {
+                    total -= len;
+                    cnt++;
+                }
+            }
+            log.fine("Deleted " + cnt + " compressed variants");
+        }
+        size.set(total);
+    }
+
+    /** Sum up the size of all variants and collect the files if the list is not null. */
+    private long scan(List<File> files) {
+        File[] list = dir.listFiles();
+        if (list == null) return 0;
+        long total = 0;
+        for (File file : list) {
+            if (!file.isFile() || !file.getName().endsWith(".gz")) continue;
+            total += file.length();
+            if (files != null) files.add(file);
+        }
+        return total;
+    }
+
+    /**
+     * Return true if it makes sense to compress the content type.
+     *
+     * @param mime
+     * @return true if text based
+     */
+    public static boolean isCompressible(String mime) {
+        if (mime == null) return false;
+        return mime.startsWith("text/")
+                || mime.contains("javascript")
+                || mime.contains("json")
+                || mime.contains("xml")
+                || mime.startsWith("image/svg");
+    }
+
+    /**
+     * Check if the Accept-Encoding header allows the encoding.
+     *
+     * @param header The Accept-Encoding header
+     * @param encoding
+     * @return true if accepted and not disabled with q=0
+     */
+    public static boolean accepts(String header, String encoding) {
+        if (header == null) return false;
+        for (String part : header.split(",")) {
+            String[] parts = part.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase(encoding) && !name.equals("*")) continue;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        if (Double.parseDouble(param.substring(2)) <= 0) return false;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the etag of the encoded variant.
+     *
+     * @param etag The etag of the identity content
+     * @param encoding
+     * @return The new etag
+     */
+    public static String variantEtag(String etag, String encoding) {
+        if (etag == null) return null;
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+}
@@ -31,9 +31,12 @@ public class ConfigUpdater implements ManagedService {
     @Override
     public void updated(Dictionary<String, ?> properties) throws ConfigurationException {
         if (properties == null) {
+            // configuration deleted, fall back to the default rules
+            VaadinResourcesServlet.setCachePolicy(CachePolicy.createDefault());
             return;
         }
 
         watch.setEnabled(!"false".equals(String.valueOf(properties.get("enabled"))));
+        VaadinResourcesServlet.setCachePolicy(CachePolicy.fromProperties(properties));
     }
 }
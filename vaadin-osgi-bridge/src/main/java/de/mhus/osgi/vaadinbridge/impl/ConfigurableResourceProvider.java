@@ -16,15 +16,26 @@
 package de.mhus.osgi.vaadinbridge.impl;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.service.component.ComponentContext;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.util.tracker.BundleTracker;
+import org.osgi.util.tracker.BundleTrackerCustomizer;
+
 import de.mhus.osgi.vaadinbridge.Resource;
 import de.mhus.osgi.vaadinbridge.VaadinConfigurableResourceProviderAdmin;
 import de.mhus.osgi.vaadinbridge.VaadinResourceProvider;
@@ -36,12 +47,21 @@ public class ConfigurableResourceProvider
     public static Logger logger = Logger.getLogger("ConfigurableResourceProvider");
     public static final String NAME = "configurableVaadinResourceProvider";
     private static LinkedList<ResourceBundle> list = new LinkedList<ResourceBundle>();
+    // copy on write routing index, rebuild on every change of the list
+    private static volatile PathPrefixIndex<ResourceBundle> index = PathPrefixIndex.empty();
+    private static volatile long generation = 0;
+    // bundle name to bundle, maintained by the bundle tracker
+    private static final ConcurrentHashMap<String, Bundle> bundles =
+            new ConcurrentHashMap<String, Bundle>();
+    private static BundleTracker<Bundle> bundleTracker;
+    private static int bundleTrackerUsers = 0;
     private BundleContext context;
     static boolean debug = false;
 
     @Activate
     public void doActivate(ComponentContext ctx) {
         this.context = ctx.getBundleContext();
+        openBundleTracker(context);
         // no more default since using BundleWatch
         //		addResource("com.vaadin.client-compiled", "/widgetsets/com.vaadin.DefaultWidgetSet");
         //		addResource("com.vaadin.server", "/vaadinBootstrap.js");
@@ -50,6 +70,11 @@ public class ConfigurableResourceProvider
         //		addResource("com.vaadin.push", "/vaadinPush.js");
     }
 
+    @Deactivate
+    public void doDeactivate(ComponentContext ctx) {
+        closeBundleTracker();
+    }
+
     @Override
     public boolean canHandle(String name) {
         ResourceBundle resource = getResourceInfo(name);
@@ -59,13 +84,29 @@ public class ConfigurableResourceProvider
 
     @Override
     public Resource getResource(String name) {
+        return resolve(name);
+    }
+
+    @Override
+    public Resource resolve(String name) {
         ResourceBundle resource = getResourceInfo(name);
         if (resource == null) return null;
         Bundle bundle = resource.getBundle();
         if (bundle == null) return null;
 
+        BundleEntryIndex entries = resource.getEntries(bundle);
+        if (entries != null && !entries.isEmpty()) {
+            BundleEntryIndex.Entry entry = entries.get(name);
+            if (debug)
+                logger.info(
+                        "GET " + name + " FROM " + bundle.getSymbolicName() + " INDEX " + entry);
+            // a miss is answered without asking the bundle
+            if (entry == null) return null;
+            return new Resource(bundle, entry.getUrl(), entry.getSize());
+        }
+
         name = "/VAADIN" + name;
-        if (debug) System.out.println("GET " + name + " FROM " + bundle.getSymbolicName());
+        if (debug) logger.info("GET " + name + " FROM " + bundle.getSymbolicName());
         return new Resource(bundle, bundle.getResource(name));
     }
 
@@ -84,18 +125,27 @@ public class ConfigurableResourceProvider
     }
 
     private ResourceBundle getResourceInfo(String name) {
-        if (debug) System.out.println("FIND " + name);
-        synchronized (list) {
-            for (ResourceBundle r : list) {
-                for (String p : r.pathes) {
-                    if (name.startsWith(p)) {
-                        return r;
-                    }
-                }
-            }
-        }
-        if (debug) System.out.println("NOT FOUND " + name);
-        return null;
+        if (debug) logger.info("FIND " + name);
+        ResourceBundle r = index.find(name);
+        if (r == null && debug) logger.info("NOT FOUND " + name);
+        return r;
+    }
+
+    /** Rebuild the routing index from the list, must be called while holding the list lock. */
+    private static void rebuildIndex() {
+        PathPrefixIndex.Builder<ResourceBundle> builder = PathPrefixIndex.builder();
+        for (ResourceBundle r : list) for (String p : r.pathes) builder.add(p, r);
+        index = builder.build();
+        generation++;
+    }
+
+    /**
+     * Return a counter changed with every change of the resource table.
+     *
+     * @return The generation
+     */
+    static long getGeneration() {
+        return generation;
     }
 
     /**
@@ -108,20 +158,67 @@ public class ConfigurableResourceProvider
     public void addResource(String bundle, String... pathes) {
         if (bundle == null || pathes == null) throw new NullPointerException();
         for (String p : pathes) if (p == null) throw new NullPointerException();
+        ResourceBundle r = null;
         synchronized (list) {
-            for (ResourceBundle r : list) {
-                if (r.bundleName.equals(bundle)) {
+            for (ResourceBundle c : list) {
+                if (c.bundleName.equals(bundle)) {
+                    r = c;
                     r.pathes = pathes;
-                    return;
+                    break;
                 }
             }
-            ResourceBundle r = new ResourceBundle();
-            r.bundleName = bundle;
-            r.pathes = pathes;
-            list.add(r);
+            if (r == null) {
+                r = new ResourceBundle();
+                r.bundleName = bundle;
+                r.pathes = pathes;
+                list.add(r);
+            }
+            rebuildIndex();
         }
 
-        cleanupCache();
+        // build the entry index at bundle start and not with the first request
+        Bundle b = r.getBundle();
+        if (b != null) r.getEntries(b);
+
+        cleanupCache(bundle);
+    }
+
+    @Override
+    public void addResources(Map<String, String[]> resources) {
+        for (Map.Entry<String, String[]> entry : resources.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null)
+                throw new NullPointerException();
+            for (String p : entry.getValue()) if (p == null) throw new NullPointerException();
+        }
+        LinkedList<ResourceBundle> changed = new LinkedList<ResourceBundle>();
+        synchronized (list) {
+            for (Map.Entry<String, String[]> entry : resources.entrySet()) {
+                // same order as addResource, known bundles are updated in place
+                ResourceBundle r = null;
+                for (ResourceBundle c : list) {
+                    if (c.bundleName.equals(entry.getKey())) {
+                        r = c;
+                        break;
+                    }
+                }
+                if (r == null) {
+                    r = new ResourceBundle();
+                    r.bundleName = entry.getKey();
+                    list.add(r);
+                }
+                r.pathes = entry.getValue();
+                changed.add(r);
+            }
+            // only one rebuild for all bundles
+            rebuildIndex();
+        }
+
+        for (ResourceBundle r : changed) {
+            Bundle b = r.getBundle();
+            if (b != null) r.getEntries(b);
+        }
+
+        cleanupCache(resources.keySet());
     }
 
     @Override
@@ -131,10 +228,12 @@ public class ConfigurableResourceProvider
             for (ResourceBundle r : list) {
                 if (r.bundleName.equals(bundle)) {
                     list.remove(r);
-                    return;
+                    rebuildIndex();
+                    break;
                 }
             }
         }
+        cleanupCache(bundle);
     }
 
     @Override
@@ -167,26 +266,89 @@ public class ConfigurableResourceProvider
 
     class ResourceBundle {
         String bundleName;
-        Bundle bundle = null;
         String[] pathes;
+        volatile BundleEntryIndex entries;
 
         public Bundle getBundle() {
+            return bundles.get(bundleName);
+        }
+
+        /**
+         * Return the entry index of the bundle, create it if not exists or the bundle was updated.
+         *
+         * @param bundle The current bundle
+         * @return The index
+         */
+        public BundleEntryIndex getEntries(Bundle bundle) {
+            BundleEntryIndex current = entries;
+            if (current != null && current.isValid(bundle)) return current;
             synchronized (this) {
-                if (bundle == null
-                        || !(bundle.getState() == Bundle.ACTIVE
-                                || bundle.getState() == Bundle.INSTALLED)) {
-                    for (Bundle b : context.getBundles()) {
-                        if (b.getSymbolicName().equals(bundleName)) {
-                            bundle = b;
-                            return bundle;
-                        }
-                    }
+                current = entries;
+                if (current == null || !current.isValid(bundle)) {
+                    current = BundleEntryIndex.create(bundle);
+                    entries = current;
+                    logger.fine("Indexed " + current.size() + " entries of " + bundleName);
                 }
+                return current;
             }
-            return bundle;
         }
     }
 
+    private static synchronized void openBundleTracker(BundleContext context) {
+        if (bundleTrackerUsers++ > 0) return;
+        bundleTracker =
+                new BundleTracker<Bundle>(
+                        context,
+                        Bundle.INSTALLED
+                                | Bundle.RESOLVED
+                                | Bundle.STARTING
+                                | Bundle.ACTIVE
+                                | Bundle.STOPPING,
+                        new BundleTrackerCustomizer<Bundle>() {
+
+                            @Override
+                            public Bundle addingBundle(Bundle bundle, BundleEvent event) {
+                                bundles.putIfAbsent(getBundleName(bundle), bundle);
+                                return bundle;
+                            }
+
+                            @Override
+                            public void modifiedBundle(
+                                    Bundle bundle, BundleEvent event, Bundle object) {}
+
+                            @Override
+                            public void removedBundle(
+                                    Bundle bundle, BundleEvent event, Bundle object) {
+                                String name = getBundleName(bundle);
+                                if (!bundles.remove(name, bundle)) return;
+                                // another version with the same name could be available
+                                BundleTracker<Bundle> tracker = bundleTracker;
+                                Bundle[] list = tracker == null ? null : tracker.getBundles();
+                                if (list == null) return;
+                                for (Bundle b : list) {
+                                    if (b != bundle && name.equals(getBundleName(b))) {
+                                        bundles.putIfAbsent(name, b);
+                                        return;
+                                    }
+                                }
+                            }
+                        });
+        bundleTracker.open();
+    }
+
+    private static synchronized void closeBundleTracker() {
+        if (bundleTrackerUsers == 0 || --bundleTrackerUsers > 0) return;
+        BundleTracker<Bundle> tracker = bundleTracker;
+        bundleTracker = null;
+        tracker.close();
+        bundles.clear();
+    }
+
+    private static String getBundleName(Bundle bundle) {
+        String name = bundle.getSymbolicName();
+        return name == null ? String.valueOf(bundle.getBundleId()) : name;
+    }
+
     @Override
     public void setDebug(boolean debug) {
         ConfigurableResourceProvider.debug = debug;
@@ -195,10 +357,55 @@ public class ConfigurableResourceProvider
     public void cleanupCache() {
         logger.info("cleanup cache");
         synchronized (VaadinResourcesServlet.SCSS_MUTEX) {
-            for (File f : new File("vaadincache").listFiles()) {
+            for (File f : VaadinResourcesServlet.CACHE_DIR.listFiles()) {
                 if (f.isFile() && !f.getName().startsWith(".")) f.delete();
             }
             ;
         }
     }
+
+    /**
+     * Remove the compiled stylesheets depending on resources of the bundle. Stylesheets compiled
+     * without knowledge of its dependencies are removed as well.
+     *
+     * @param bundle Name of the changed bundle
+     */
+    public void cleanupCache(String bundle) {
+        cleanupCache(Collections.singleton(bundle));
+    }
+
+    /**
+     * Remove the compiled stylesheets depending on resources of one of the bundles or on an import
+     * candidate which is available now.
+     *
+     * @param bundles Names of the changed bundles
+     */
+    public void cleanupCache(Collection<String> bundles) {
+        if (bundles.isEmpty()) return;
+        logger.info("cleanup cache for " + bundles);
+        synchronized (VaadinResourcesServlet.SCSS_MUTEX) {
+            HashSet<File> keep = new HashSet<File>();
+            for (Map.Entry<String, List<ScssCompileCache.Dependency>> entry :
+                    VaadinResourcesServlet.SCSS_STORE.getAllDependencies().entrySet()) {
+                if (isUnaffected(entry.getValue(), bundles))
+                    keep.add(VaadinResourcesServlet.getCssCacheFile(entry.getKey()));
+            }
+            File[] files = VaadinResourcesServlet.CACHE_DIR.listFiles();
+            if (files == null) return;
+            for (File f : files) {
+                if (f.isFile() && !f.getName().startsWith(".") && !keep.contains(f)) f.delete();
+            }
+        }
+    }
+
+    private boolean isUnaffected(
+            List<ScssCompileCache.Dependency> deps, Collection<String> bundles) {
+        for (ScssCompileCache.Dependency dep : deps) {
+            if (dep.isMissing()) {
+                Resource r = resolve(dep.getPath());
+                if (r != null && r.getUrl() != null) return false;
+            } else if (dep.getBundle() == null || bundles.contains(dep.getBundle())) return false;
+        }
+        return true;
+    }
 }
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram with exponential buckets. Bucket i counts values in [2^(i-1), 2^i), so
+ * percentiles have a precision of a factor of two, which is enough to spot regressions.
+ */
+public class Histogram {
+
+    public static final int COUNT = 0;
+    public static final int MIN = 1;
+    public static final int MEAN = 2;
+    public static final int P50 = 3;
+    public static final int P95 = 4;
+    public static final int P99 = 5;
+    public static final int MAX = 6;
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        for (; ; ) {
+            long current = min.get();
+            if (value >= current || min.compareAndSet(current, value)) break;
+        }
+        for (; ; ) {
+            long current = max.get();
+            if (value <= current || max.compareAndSet(current, value)) break;
+        }
+    }
+
+    /**
+     * Return count, min, mean, p50, p95, p99 and max. The values are not a consistent snapshot if
+     * recorded concurrently.
+     *
+     * @return The summary, see the index constants
+     */
+    public long[] getSummary() {
+        long[] out = new long[7];
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        out[COUNT] = total;
+        if (total == 0) return out;
+        out[MIN] = min.get();
+        out[MAX] = max.get();
+        long c = count.get();
+        out[MEAN] = c == 0 ? 0 : sum.get() / c;
+        out[P50] = percentile(counts, total, 0.50, out[MAX]);
+        out[P95] = percentile(counts, total, 0.95, out[MAX]);
+        out[P99] = percentile(counts, total, 0.99, out[MAX]);
+        return out;
+    }
+
+    private static long percentile(long[] counts, long total, double p, long max) {
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                if (i == 0) return 0;
+                if (i >= BUCKETS - 1) return max;
+                return Math.min((1L << i) - 1, max);
+            }
+        }
+        return max;
+    }
+}
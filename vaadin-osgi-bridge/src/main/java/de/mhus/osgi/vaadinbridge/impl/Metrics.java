@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global registry of the bridge metrics. The servlet and the providers are service factories, so
+ * the metrics are static and shared by all instances. Recording is lock free, only a new slow path
+ * entry takes a short lock.
+ */
+public class Metrics {
+
+    public static final String REQUESTS = "requests";
+    public static final String NOT_FOUND = "requests.notFound";
+    public static final String NOT_MODIFIED = "requests.notModified";
+    public static final String PARTIAL = "requests.partial";
+    public static final String GZIP = "requests.gzip";
+    public static final String BYTES_SENT = "bytes.sent";
+    public static final String CACHE_HIT = "cache.hit";
+    public static final String CACHE_MISS = "cache.miss";
+    public static final String CACHE_UNCACHEABLE = "cache.uncacheable";
+    public static final String CACHE_EVICT = "cache.evict";
+    public static final String CACHE_BYTES = "cache.bytes";
+    public static final String NEGATIVE_HIT = "lookup.negativeHit";
+    public static final String SCSS_COMPILE = "scss.compile";
+    public static final String SCSS_REUSE = "scss.reuse";
+    public static final String SCSS_ERROR = "scss.error";
+
+    public static final String TIME_REQUEST = "time.request";
+    public static final String TIME_SCSS = "time.scss";
+    public static final String TIME_LOOKUP = "time.lookup.";
+
+    public static final int SLOW_PATHS = 20;
+
+    private static final ConcurrentHashMap<String, AtomicLong> counters =
+            new ConcurrentHashMap<String, AtomicLong>();
+    private static final ConcurrentHashMap<String, Histogram> histograms =
+            new ConcurrentHashMap<String, Histogram>();
+    private static final HashMap<String, Long> slowPaths = new HashMap<String, Long>();
+    private static volatile long slowThreshold = 0;
+
+    private Metrics() {}
+
+    public static void inc(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long value) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        counter.addAndGet(value);
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param name Name of the histogram
+     * @param start Start time from System.nanoTime()
+     */
+    public static void time(String name, long start) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        histogram.record((System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Remember the path if the request is one of the slowest since the last reset.
+     *
+     * @param path
+     * @param start Start time from System.nanoTime()
+     */
+    public static void slowPath(String path, long start) {
+        long duration = (System.nanoTime() - start) / 1000;
+        if (path == null || duration <= slowThreshold) return;
+        synchronized (slowPaths) {
+            Long old = slowPaths.get(path);
+            if (old != null && old >= duration) return;
+            slowPaths.put(path, duration);
+            if (slowPaths.size() <= SLOW_PATHS) return;
+            // drop the fastest entry and raise the threshold to it
+            String fastest = null;
+            long min = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> entry : slowPaths.entrySet()) {
+                if (entry.getValue() < min) {
+                    min = entry.getValue();
+                    fastest = entry.getKey();
+                }
+            }
+            slowPaths.remove(fastest);
+            slowThreshold = min;
+        }
+    }
+
+    public static Map<String, Long> getCounters() {
+        TreeMap<String, Long> out = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet())
+            out.put(entry.getKey(), entry.getValue().get());
+        return out;
+    }
+
+    public static String[] getHistogramNames() {
+        ArrayList<String> names = new ArrayList<String>(histograms.keySet());
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    public static long[] getHistogram(String name) {
+        Histogram histogram = histograms.get(name);
+        return histogram == null ? null : histogram.getSummary();
+    }
+
+    public static Map<String, Long> getSlowPaths() {
+        List<Map.Entry<String, Long>> entries;
+        synchronized (slowPaths) {
+            entries =
+                    new ArrayList<Map.Entry<String, Long>>(
+                            new HashMap<String, Long>(slowPaths).entrySet());
+        }
+        Collections.sort(
+                entries,
+                new Comparator<Map.Entry<String, Long>>() {
+                    @Override
+                    public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                        return Long.compare(b.getValue(), a.getValue());
+                    }
+                });
+        LinkedHashMap<String, Long> out = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries) out.put(entry.getKey(), entry.getValue());
+        return out;
+    }
+
+    /** Reset all values. The size of the content cache is a gauge and is not reset. */
+    public static void reset() {
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet())
+            if (!CACHE_BYTES.equals(entry.getKey())) entry.getValue().set(0);
+        histograms.clear();
+        synchronized (slowPaths) {
+            slowPaths.clear();
+            slowThreshold = 0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of names not found by any provider. Entries of an older generation are ignored,
+ * e.g. if the resource table or the set of providers was changed. Entries expire after a time to
+ * live, because third party providers can't signal changes.
+ *
+ * <p>Lookups take no lock. The size is bounded approximately, the cache is cleared if it is full.
+ */
+public class NegativeLookupCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_TTL = 60000;
+
+    private final int maxSize;
+    private final long ttl;
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<String, Entry>();
+
+    public NegativeLookupCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    public NegativeLookupCache(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Return true if the name was not found before.
+     *
+     * @param name
+     * @param currentGeneration
+     * @return true if known as missing
+     */
+    public boolean isMissing(String name, long currentGeneration) {
+        Entry entry = map.get(name);
+        if (entry == null) return false;
+        if (entry.generation != currentGeneration
+                || System.currentTimeMillis() - entry.time > ttl) {
+            map.remove(name, entry);
+            return false;
+        }
+        return true;
+    }
+
+    public void addMissing(String name, long currentGeneration) {
+        if (map.size() >= maxSize) map.clear();
+        map.put(name, new Entry(currentGeneration, System.currentTimeMillis()));
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    private static class Entry {
+
+        private final long generation;
+        private final long time;
+
+        Entry(long generation, long time) {
+            this.generation = generation;
+            this.time = time;
+        }
+    }
+}
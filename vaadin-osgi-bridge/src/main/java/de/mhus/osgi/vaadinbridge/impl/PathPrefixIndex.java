@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.util.Arrays;
+
+/**
+ * Immutable prefix trie mapping path prefixes to values. Instances are never modified after
+ * build(), a change creates a new index which can be published by a volatile field. Lookups are
+ * lock free and depend on the length of the requested path only.
+ *
+ * <p>If more then one prefix matches, the value added first wins. This is the same behavior as
+ * the former linear scan over the registered list.
+ *
+ * @param <T> Type of the values
+ */
+public class PathPrefixIndex<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final PathPrefixIndex EMPTY = new PathPrefixIndex<Object>(new Node());
+
+    private final Node root;
+
+    private PathPrefixIndex(Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PathPrefixIndex<T> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Return the value of the first added prefix matching the name or null.
+     *
+     * @param name
+     * @return The value or null
+     */
+    @SuppressWarnings("unchecked")
+    public T find(String name) {
+        if (name == null) return null;
+        Node node = root;
+        Node best = null;
+        int len = name.length();
+        for (int i = 0; ; i++) {
+            if (node.value != null && (best == null || node.order < best.order)) best = node;
+            if (i >= len) break;
+            node = node.child(name.charAt(i));
+            if (node == null) break;
+        }
+        return best == null ? null : (T) best.value;
+    }
+
+    public boolean isEmpty() {
+        return root.value == null && root.keys.length == 0;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<T>();
+    }
+
+    public static class Builder<T> {
+
+        private BuildNode root = new BuildNode();
+        private int order = 0;
+
+        /**
+         * Add a prefix. An already existing prefix will not be overwritten.
+         *
+         * @param prefix
+         * @param value
+         * @return the builder
+         */
+        public Builder<T> add(String prefix, T value) {
+            if (prefix == null || value == null) throw new NullPointerException();
+            BuildNode node = root;
+            for (int i = 0; i < prefix.length(); i++) node = node.getOrCreate(prefix.charAt(i));
+            if (node.value == null) {
+                node.value = value;
+                node.order = order;
+            }
+            order++;
+            return this;
+        }
+
+        public PathPrefixIndex<T> build() {
+            return new PathPrefixIndex<T>(root.freeze());
+        }
+    }
+
+    private static class BuildNode {
+        private char[] keys = new char[0];
+        private BuildNode[] children = new BuildNode[0];
+        private Object value;
+        private int order = Integer.MAX_VALUE;
+
+        BuildNode getOrCreate(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            if (pos >= 0) return children[pos];
+            pos = -pos - 1;
+            char[] k = new char[keys.length + 1];
+            BuildNode[] n = new BuildNode[children.length + 1];
+            System.arraycopy(keys, 0, k, 0, pos);
+            System.arraycopy(children, 0, n, 0, pos);
+            System.arraycopy(keys, pos, k, pos + 1, keys.length - pos);
+            System.arraycopy(children, pos, n, pos + 1, children.length - pos);
+            BuildNode node = new BuildNode();
+            k[pos] = c;
+            n[pos] = node;
+            keys = k;
+            children = n;
+            return node;
+        }
+
+        Node freeze() {
+            Node[] c = new Node[children.length];
+            for (int i = 0; i < c.length; i++) c[i] = children[i].freeze();
+            return new Node(keys, c, value, order);
+        }
+    }
+
+    private static class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final Object value;
+        private final int order;
+
+        Node() {
+            this(new char[0], new Node[0], null, Integer.MAX_VALUE);
+        }
+
+        Node(char[] keys, Node[] children, Object value, int order) {
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+            this.order = order;
+        }
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            return pos < 0 ? null : children[pos];
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.Bundle;
+
+import de.mhus.osgi.vaadinbridge.Resource;
+
+/**
+ * Size aware LRU cache for the content of small resources. The key contains the bundle id, the
+ * last modification of the bundle and the url of the resource, so a bundle update will not hit
+ * old entries. Old entries will be evicted by the LRU strategy.
+ */
+public class ResourceCache {
+
+    public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_UNCACHEABLE = 1000;
+
+    private final LinkedHashMap<String, Entry> map =
+            new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    // keys of resources with unknown length found to be too large, they are not read again
+    private final ConcurrentHashMap<String, Boolean> uncacheableKeys =
+            new ConcurrentHashMap<String, Boolean>();
+    private volatile long maxSize;
+    private volatile int maxEntrySize;
+    private long size;
+    private long hits;
+    private long misses;
+
+    public ResourceCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_ENTRY_SIZE);
+    }
+
+    public ResourceCache(long maxSize, int maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Return the cached content of the resource. Load the content if not already cached.
+     *
+     * @param res
+     * @return The entry or null if the resource is too large to be cached
+     * @throws IOException
+     */
+    public Entry get(Resource res) throws IOException {
+        String key = getKey(res);
+        synchronized (this) {
+            Entry entry = map.get(key);
+            if (entry != null) {
+                hits++;
+                Metrics.inc(Metrics.CACHE_HIT);
+                return entry;
+            }
+            misses++;
+        }
+        Metrics.inc(Metrics.CACHE_MISS);
+
+        int max = maxEntrySize;
+        if (max <= 0 || uncacheableKeys.containsKey(key)) return uncacheable();
+        long len = res.getContentLength();
+        if (len > max) return uncacheable();
+        byte[] data = res.toByteArray(max);
+        if (data == null) {
+            // bounded approximately, like the negative lookup cache
+            if (uncacheableKeys.size() >= MAX_UNCACHEABLE) uncacheableKeys.clear();
+            uncacheableKeys.put(key, Boolean.TRUE);
+            return uncacheable();
+        }
+
+        Entry entry = new Entry(key, data, createEtag(data), res.getLastModified());
+        put(entry);
+        return entry;
+    }
+
+    private static Entry uncacheable() {
+        Metrics.inc(Metrics.CACHE_UNCACHEABLE);
+        return null;
+    }
+
+    private synchronized void put(Entry entry) {
+        Entry old = map.put(entry.key, entry);
+        long delta = entry.data.length;
+        if (old != null) delta -= old.data.length;
+        size += delta;
+        Metrics.add(Metrics.CACHE_BYTES, delta);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Entry> iter = map.values().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Entry e = iter.next();
+            size -= e.data.length;
+            iter.remove();
+            Metrics.inc(Metrics.CACHE_EVICT);
+            Metrics.add(Metrics.CACHE_BYTES, -e.data.length);
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        uncacheableKeys.clear();
+        Metrics.add(Metrics.CACHE_BYTES, -size);
+        size = 0;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public void setMaxEntrySize(int maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+        uncacheableKeys.clear();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public String getKey(Resource res) {
+        StringBuilder key = new StringBuilder();
+        Bundle bundle = res.getBundle();
+        if (bundle != null) key.append(bundle.getBundleId()).append(':');
+        key.append(res.getLastModified()).append(':');
+        URL url = res.getUrl();
+        File file = res.getFile();
+        if (file != null) {
+            // files in the local cache could be rewritten without bundle update
+            key.append(file.lastModified()).append(':');
+        }
+        key.append(url == null ? res.getPath() : url.toExternalForm());
+        return key.toString();
+    }
+
+    /**
+     * Create a strong etag using the hash of the content.
+     *
+     * @param data
+     * @return The quoted etag
+     */
+    public static String createEtag(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] hash = md.digest(data);
+            char[] out = new char[hash.length * 2 + 2];
+            out[0] = '"';
+            for (int i = 0; i < hash.length; i++) {
+                out[i * 2 + 1] = HEX[(hash[i] >> 4) & 0x0f];
+                out[i * 2 + 2] = HEX[hash[i] & 0x0f];
+            }
+            out[out.length - 1] = '"';
+            return new String(out);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Check the If-None-Match header value against the etag.
+     *
+     * @param header The header value, could be a list of etags
+     * @param etag
+     * @return true if one of the etags matches
+     */
+    public static boolean matchesEtag(String header, String etag) {
+        if (header == null || etag == null) return false;
+        for (String part : header.split(",")) {
+            part = part.trim();
+            if (part.equals("*")) return true;
+            if (part.startsWith("W/")) part = part.substring(2);
+            if (part.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    public static class Entry {
+
+        private final String key;
+        private final byte[] data;
+        private final String etag;
+        private final long lastModified;
+
+        Entry(String key, byte[] data, String etag, long lastModified) {
+            this.key = key;
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
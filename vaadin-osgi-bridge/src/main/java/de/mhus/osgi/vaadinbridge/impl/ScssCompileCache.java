@@ -0,0 +1,297 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent store for compiled stylesheets. For every stylesheet a manifest is written with the
+ * path and content hash of the root scss and of every import resolved while compiling. The css is
+ * stored under the hash over all of them. A stored css is valid as long as all dependencies still
+ * have the same content, so a restart or the refresh of an unrelated bundle will not need a new
+ * compilation. Import candidates not found while compiling are stored as missing dependencies, the
+ * css is invalid if one of them is available later.
+ */
+public class ScssCompileCache {
+
+    private static final Logger logger = Logger.getLogger("ScssCompileCache");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File dir;
+
+    public ScssCompileCache(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    /**
+     * Return the stored css if all dependencies are unchanged.
+     *
+     * @param key The name of the stylesheet
+     * @param hasher To calculate the current content hash of a dependency
+     * @return The stored css file or null
+     */
+    public File lookup(String key, ContentHasher hasher) {
+        List<Dependency> deps = loadDependencies(key);
+        if (deps == null || deps.isEmpty()) return null;
+        try {
+            for (Dependency dep : deps) {
+                String current = hasher.hash(dep.getPath());
+                if (dep.isMissing() ? current != null : !dep.getHash().equals(current)) {
+                    logger.fine("Changed " + dep.getPath() + " for " + key);
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Can't validate " + key, e);
+            return null;
+        }
+        File css = getCompiledFile(key, hash(deps));
+        return css.exists() ? css : null;
+    }
+
+    /**
+     * Store the compiled css and the manifest of the dependencies.
+     *
+     * @param key The name of the stylesheet
+     * @param css The compiled css
+     * @param deps All resources read to compile the stylesheet
+     * @return The stored file
+     * @throws IOException
+     */
+    public File store(String key, File css, List<Dependency> deps) throws IOException {
+        File old = null;
+        List<Dependency> oldDeps = loadDependencies(key);
+        if (oldDeps != null && !oldDeps.isEmpty()) old = getCompiledFile(key, hash(oldDeps));
+
+        String hash = hash(deps);
+        File target = getCompiledFile(key, hash);
+        File tmp = File.createTempFile(".css", ".tmp", dir);
+        Files.copy(css.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(
+                tmp.toPath(),
+                target.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        Properties p = new Properties();
+        p.setProperty("key", key);
+        p.setProperty("hash", hash);
+        p.setProperty("count", String.valueOf(deps.size()));
+        for (int i = 0; i < deps.size(); i++) {
+            Dependency dep = deps.get(i);
+            p.setProperty("dep." + i + ".path", dep.getPath());
+            p.setProperty("dep." + i + ".hash", dep.getHash());
+            if (dep.getBundle() != null) p.setProperty("dep." + i + ".bundle", dep.getBundle());
+        }
+        tmp = File.createTempFile(".manifest", ".tmp", dir);
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            p.store(os, "compiled scss " + key);
+        }
+        Files.move(
+                tmp.toPath(),
+                getManifestFile(key).toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        if (old != null && !old.equals(target)) old.delete();
+        return target;
+    }
+
+    /**
+     * Return the dependencies of the last compilation or null if not known.
+     *
+     * @param key The name of the stylesheet
+     * @return List of dependencies or null
+     */
+    public List<Dependency> loadDependencies(String key) {
+        File file = getManifestFile(key);
+        if (!file.exists()) return null;
+        Properties p = loadManifest(file);
+        return p == null ? null : parseDependencies(p);
+    }
+
+    /**
+     * Return the dependencies of all stored stylesheets.
+     *
+     * @return Map of stylesheet to dependencies
+     */
+    public Map<String, List<Dependency>> getAllDependencies() {
+        HashMap<String, List<Dependency>> out = new HashMap<String, List<Dependency>>();
+        File[] files = dir.listFiles();
+        if (files == null) return out;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(".manifest") || name.startsWith(".")) continue;
+            Properties p = loadManifest(file);
+            if (p == null) continue;
+            String key = p.getProperty("key");
+            List<Dependency> deps = parseDependencies(p);
+            if (key != null && deps != null) out.put(key, deps);
+        }
+        return out;
+    }
+
+    private static Properties loadManifest(File file) {
+        Properties p = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            p.load(is);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Can't read manifest " + file, e);
+            return null;
+        }
+        return p;
+    }
+
+    private static List<Dependency> parseDependencies(Properties p) {
+        int count = Integer.parseInt(p.getProperty("count", "0"));
+        ArrayList<Dependency> out = new ArrayList<Dependency>(count);
+        for (int i = 0; i < count; i++) {
+            String path = p.getProperty("dep." + i + ".path");
+            String hash = p.getProperty("dep." + i + ".hash");
+            if (path == null || hash == null) return null;
+            out.add(new Dependency(path, hash, p.getProperty("dep." + i + ".bundle")));
+        }
+        return out;
+    }
+
+    protected File getManifestFile(String key) {
+        return new File(dir, toFileName(key) + ".manifest");
+    }
+
+    protected File getCompiledFile(String key, String hash) {
+        return new File(dir, toFileName(key) + "-" + hash + ".css");
+    }
+
+    private static String toFileName(String key) {
+        return key.replace(".", "_").replace("~", "_").replace("/", "_");
+    }
+
+    private static String hash(List<Dependency> deps) {
+        StringBuilder sb = new StringBuilder();
+        for (Dependency dep : deps)
+            sb.append(dep.getPath()).append('=').append(dep.getHash()).append('\n');
+        return hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String hash(byte[] data) {
+        return toHex(createDigest().digest(data));
+    }
+
+    public static String hash(File file) throws IOException {
+        MessageDigest md = createDigest();
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) >= 0) md.update(buffer, 0, len);
+        }
+        return toHex(md.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        char[] out = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            out[i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+            out[i * 2 + 1] = HEX[hash[i] & 0x0f];
+        }
+        return new String(out);
+    }
+
+    public interface ContentHasher {
+
+        /**
+         * Return the hash of the current content of the resource.
+         *
+         * @param path The resource path
+         * @return The hash or null if the resource is not available
+         * @throws IOException
+         */
+        String hash(String path) throws IOException;
+    }
+
+    public static class Dependency {
+
+        /** Hash of a dependency not found while compiling. */
+        public static final String MISSING = "-";
+
+        private final String path;
+        private final String hash;
+        private final String bundle;
+
+        public Dependency(String path, String hash, String bundle) {
+            this.path = path;
+            this.hash = hash;
+            this.bundle = bundle;
+        }
+
+        /**
+         * Create a dependency for a resource not found while compiling.
+         *
+         * @param path The resource path
+         * @return The dependency
+         */
+        public static Dependency missing(String path) {
+            return new Dependency(path, MISSING, null);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isMissing() {
+            return MISSING.equals(hash);
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Return the name of the bundle the resource was loaded from, the same name as used for
+         * addResource() of the resource provider admin.
+         *
+         * @return The bundle name or null if unknown
+         */
+        public String getBundle() {
+            return bundle;
+        }
+    }
+}
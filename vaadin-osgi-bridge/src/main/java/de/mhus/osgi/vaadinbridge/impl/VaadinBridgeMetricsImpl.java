@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.osgi.service.component.ComponentContext;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import de.mhus.osgi.vaadinbridge.VaadinBridgeMetrics;
+
+/** Publish the metrics as service and as MXBean in the platform MBean server. */
+@Component(service = VaadinBridgeMetrics.class, name = "VaadinBridgeMetrics", immediate = true)
+public class VaadinBridgeMetricsImpl implements VaadinBridgeMetrics {
+
+    private static final Logger log = Logger.getLogger(VaadinBridgeMetricsImpl.class.getName());
+
+    private ObjectName objectName;
+
+    @Activate
+    public void doActivate(ComponentContext ctx) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(new StandardMBean(this, VaadinBridgeMetrics.class, true), name);
+            objectName = name;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Can't register MBean " + OBJECT_NAME, e);
+        }
+    }
+
+    @Deactivate
+    public void doDeactivate(ComponentContext ctx) {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            log.log(Level.FINE, "Can't unregister MBean " + OBJECT_NAME, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        return Metrics.getCounters();
+    }
+
+    @Override
+    public String[] getHistogramNames() {
+        return Metrics.getHistogramNames();
+    }
+
+    @Override
+    public long[] getHistogram(String name) {
+        return Metrics.getHistogram(name);
+    }
+
+    @Override
+    public Map<String, Long> getSlowPaths() {
+        return Metrics.getSlowPaths();
+    }
+
+    @Override
+    public void reset() {
+        Metrics.reset();
+    }
+}
@@ -18,8 +18,21 @@ package de.mhus.osgi.vaadinbridge.impl;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -29,6 +42,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.ComponentContext;
@@ -45,26 +59,65 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import de.mhus.osgi.vaadinbridge.Resource;
 import de.mhus.osgi.vaadinbridge.VaadinResourceProvider;
+import de.mhus.osgi.vaadinbridge.VaadinScssCompiler;
 
 @Component(
-        service = Servlet.class,
+        service = {Servlet.class, VaadinScssCompiler.class},
         property = "alias=/VAADIN",
         name = "VAADINResources",
         servicefactory = true)
-public class VaadinResourcesServlet extends HttpServlet {
+public class VaadinResourcesServlet extends HttpServlet implements VaadinScssCompiler {
+
+    /** System property with the cache directory, by default vaadincache in the working dir. */
+    public static final String CACHE_DIR_PROPERTY = "de.mhus.osgi.vaadinbridge.cache";
+
+    static final File CACHE_DIR = new File(System.getProperty(CACHE_DIR_PROPERTY, "vaadincache"));
 
     static {
-        new File("vaadincache").mkdirs(); // TODO configurable ...
+        CACHE_DIR.mkdirs();
     }
 
     public static final Object SCSS_MUTEX = new Object();
-    private final Map<String, File> scssCache = new HashMap<String, File>();
+    // shared by all instances of the service factory
+    private static final Map<String, File> scssCache = new ConcurrentHashMap<String, File>();
+    private static final ConcurrentHashMap<String, FutureTask<File>> scssCompiling =
+            new ConcurrentHashMap<String, FutureTask<File>>();
+    private static final Map<String, Long> scssCompileTimes =
+            new ConcurrentHashMap<String, Long>();
+    static final ScssCompileCache SCSS_STORE =
+            new ScssCompileCache(new File(CACHE_DIR, "compiled"));
+    private final ScssCompileCache.ContentHasher contentHasher =
+            new ScssCompileCache.ContentHasher() {
+                @Override
+                public String hash(String path) throws IOException {
+                    try {
+                        Resource r = getResource(path);
+                        if (r == null || r.getUrl() == null) return null;
+                        return ScssCompileCache.hash(r.toByteArray(Integer.MAX_VALUE));
+                    } catch (ServletException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+    private final ResourceCache cache = new ResourceCache();
+    // shared by all instances, the size of the directory is limited
+    private static final CompressedVariants variants =
+            new CompressedVariants(new File(CACHE_DIR, "compressed"));
     private static Logger logger = Logger.getLogger("VaadinResourcesServlet");
+    private static volatile CachePolicy cachePolicy = CachePolicy.createDefault();
 
     private static final long serialVersionUID = 1L;
     private BundleContext context = null;
     private ServiceTracker<VaadinResourceProvider, VaadinResourceProvider> tracker;
     private ServiceTrackerCustomizer<VaadinResourceProvider, VaadinResourceProvider> customizer;
+    // sorted by ranking, highest first
+    private final TreeMap<ServiceReference<VaadinResourceProvider>, VaadinResourceProvider>
+            providerMap =
+                    new TreeMap<ServiceReference<VaadinResourceProvider>, VaadinResourceProvider>(
+                            Collections.reverseOrder());
+    private volatile VaadinResourceProvider[] providers = new VaadinResourceProvider[0];
+    private volatile long providerGeneration = 0;
+    private final NegativeLookupCache missing = new NegativeLookupCache();
 
     @Activate
     public void activate(ComponentContext ctx) {
@@ -75,18 +128,37 @@ public class VaadinResourcesServlet extends HttpServlet {
                     @Override
                     public VaadinResourceProvider addingService(
                             ServiceReference<VaadinResourceProvider> reference) {
-                        return context.getService(reference);
+                        VaadinResourceProvider service = context.getService(reference);
+                        if (service == null) return null;
+                        synchronized (providerMap) {
+                            providerMap.put(reference, service);
+                            updateProviders();
+                        }
+                        return service;
                     }
 
                     @Override
                     public void modifiedService(
                             ServiceReference<VaadinResourceProvider> reference,
-                            VaadinResourceProvider service) {}
+                            VaadinResourceProvider service) {
+                        // ranking could be changed, the old position is not found by the key
+                        synchronized (providerMap) {
+                            providerMap.values().remove(service);
+                            providerMap.put(reference, service);
+                            updateProviders();
+                        }
+                    }
 
                     @Override
                     public void removedService(
                             ServiceReference<VaadinResourceProvider> reference,
-                            VaadinResourceProvider service) {}
+                            VaadinResourceProvider service) {
+                        synchronized (providerMap) {
+                            providerMap.remove(reference);
+                            updateProviders();
+                        }
+                        context.ungetService(reference);
+                    }
                 };
         tracker =
                 new ServiceTracker<VaadinResourceProvider, VaadinResourceProvider>(
@@ -98,19 +170,229 @@ public class VaadinResourcesServlet extends HttpServlet {
     public void deactivate(ComponentContext ctx) {
         tracker.close();
         tracker = null;
+        // release the content and keep the cache size metric correct
+        cache.clear();
+    }
+
+    /** Publish a new ranked snapshot of the providers, must be called holding providerMap. */
+    private void updateProviders() {
+        providers =
+                providerMap.values().toArray(new VaadinResourceProvider[providerMap.size()]);
+        providerGeneration++;
     }
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
+        serve(req, resp, true);
+    }
+
+    protected void serve(HttpServletRequest req, HttpServletResponse resp, boolean withContent)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        Metrics.inc(Metrics.REQUESTS);
+        try {
+            serveResource(req, resp, withContent);
+        } finally {
+            Metrics.time(Metrics.TIME_REQUEST, start);
+            Metrics.slowPath(req.getPathInfo(), start);
+        }
+    }
+
+    private void serveResource(
+            HttpServletRequest req, HttpServletResponse resp, boolean withContent)
+            throws ServletException, IOException {
 
         Resource res = getResource(req.getPathInfo());
-        if (res == null) return;
+        if (res == null) {
+            Metrics.inc(Metrics.NOT_FOUND);
+            return;
+        }
 
         setMimeType(res, req, resp);
         setLastModified(res, req, resp);
+        setCacheControl(req.getPathInfo(), resp);
+
+        ResourceCache.Entry entry = cache.get(res);
+        String etag = entry == null ? null : entry.getEtag();
+
+        String encoding = null;
+        String mime = resp.getContentType();
+        if (CompressedVariants.isCompressible(mime)) {
+            resp.setHeader("Vary", "Accept-Encoding");
+            long length = entry != null ? entry.getData().length : res.getContentLength();
+            if ((length < 0 || length >= CompressedVariants.MIN_SIZE)
+                    && CompressedVariants.accepts(
+                            req.getHeader("Accept-Encoding"), CompressedVariants.GZIP)) {
+                encoding = CompressedVariants.GZIP;
+                etag = CompressedVariants.variantEtag(etag, encoding);
+            }
+        }
+        if (etag != null) resp.setHeader("ETag", etag);
+
+        if (isNotModified(res, etag, req)) {
+            Metrics.inc(Metrics.NOT_MODIFIED);
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        FileChannel channel = null;
+        if (encoding != null) {
+            try {
+                channel = variants.openGzip(res, entry, cache.getKey(res));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Can't compress " + req.getPathInfo(), e);
+            }
+            if (channel != null) {
+                resp.setHeader("Content-Encoding", encoding);
+                Metrics.inc(Metrics.GZIP);
+            } else {
+                etag = entry == null ? null : entry.getEtag();
+                if (etag != null) resp.setHeader("ETag", etag);
+            }
+        }
+        if (channel != null) {
+            try {
+                sendContent(
+                        req,
+                        resp,
+                        new ChannelContent(channel),
+                        etag,
+                        res.getLastModified(),
+                        mime,
+                        withContent);
+            } finally {
+                channel.close();
+            }
+            return;
+        }
 
-        res.writeToStream(resp.getOutputStream());
+        Content content =
+                entry != null ? new BytesContent(entry.getData()) : new ResourceContent(res);
+        sendContent(req, resp, content, etag, res.getLastModified(), mime, withContent);
+    }
+
+    /**
+     * Send the content or the requested ranges of it. Ranges are only supported if the length of
+     * the content is known.
+     */
+    protected void sendContent(
+            HttpServletRequest req,
+            HttpServletResponse resp,
+            Content content,
+            String etag,
+            long lastModified,
+            String mime,
+            boolean withContent)
+            throws IOException {
+
+        long length = content.getLength();
+        if (length < 0) {
+            if (withContent) content.write(resp.getOutputStream(), 0, -1);
+            return;
+        }
+        resp.setHeader("Accept-Ranges", "bytes");
+
+        List<long[]> ranges = null;
+        if (withContent && isIfRangeValid(req, etag, lastModified))
+            ranges = ByteRanges.parse(req.getHeader("Range"), length);
+
+        if (ranges == null) {
+            resp.setHeader("Content-Length", String.valueOf(length));
+            if (withContent) {
+                content.write(resp.getOutputStream(), 0, length);
+                Metrics.add(Metrics.BYTES_SENT, length);
+            }
+            return;
+        }
+
+        if (ranges.isEmpty()) {
+            resp.setHeader("Content-Range", "bytes */" + length);
+            resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        Metrics.inc(Metrics.PARTIAL);
+
+        if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            long count = range[1] - range[0] + 1;
+            resp.setHeader(
+                    "Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            resp.setHeader("Content-Length", String.valueOf(count));
+            content.write(resp.getOutputStream(), range[0], count);
+            Metrics.add(Metrics.BYTES_SENT, count);
+            return;
+        }
+
+        OutputStream out = resp.getOutputStream();
+
+        String boundary = "VAADIN_" + Long.toHexString(System.nanoTime());
+        byte[][] heads = new byte[ranges.size()][];
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        long total = tail.length;
+        for (int i = 0; i < heads.length; i++) {
+            long[] range = ranges.get(i);
+            heads[i] =
+                    ("\r\n--"
+                                    + boundary
+                                    + "\r\nContent-Type: "
+                                    + mime
+                                    + "\r\nContent-Range: bytes "
+                                    + range[0]
+                                    + "-"
+                                    + range[1]
+                                    + "/"
+                                    + length
+                                    + "\r\n\r\n")
+                            .getBytes(StandardCharsets.ISO_8859_1);
+            total += heads[i].length + range[1] - range[0] + 1;
+        }
+        resp.setContentType("multipart/byteranges; boundary=" + boundary);
+        resp.setHeader("Content-Length", String.valueOf(total));
+        for (int i = 0; i < heads.length; i++) {
+            long[] range = ranges.get(i);
+            out.write(heads[i]);
+            content.write(out, range[0], range[1] - range[0] + 1);
+        }
+        out.write(tail);
+        Metrics.add(Metrics.BYTES_SENT, total);
+    }
+
+    /**
+     * Check the If-Range header. If it does not match the current version the full content must
+     * be delivered.
+     */
+    protected boolean isIfRangeValid(HttpServletRequest req, String etag, long lastModified) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"")) return ifRange.equals(etag);
+        if (ifRange.startsWith("W/")) return false;
+        try {
+            long date = req.getDateHeader("If-Range");
+            return lastModified > 0 && date >= lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    protected boolean isNotModified(Resource res, String etag, HttpServletRequest req) {
+        // If-None-Match has precedence, see RFC 7232 section 6
+        String noneMatch = req.getHeader("If-None-Match");
+        if (noneMatch != null)
+            return etag != null && ResourceCache.matchesEtag(noneMatch, etag);
+
+        long date = res.getLastModified();
+        if (date <= 0) return false;
+        try {
+            long since = req.getDateHeader("If-Modified-Since");
+            // http dates have a resolution of seconds
+            return since != -1 && since >= date / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
     protected void setMimeType(Resource res, HttpServletRequest req, HttpServletResponse resp)
@@ -118,6 +400,19 @@ public class VaadinResourcesServlet extends HttpServlet {
         resp.setContentType(res.getMimeType(getServletContext()));
     }
 
+    protected void setCacheControl(String path, HttpServletResponse resp) {
+        String value = cachePolicy.getCacheControl(path);
+        if (value != null) resp.setHeader("Cache-Control", value);
+    }
+
+    static void setCachePolicy(CachePolicy policy) {
+        cachePolicy = policy == null ? CachePolicy.createDefault() : policy;
+    }
+
+    static CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
     protected void setLastModified(Resource res, HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
         long date = res.getLastModified();
@@ -127,22 +422,27 @@ public class VaadinResourcesServlet extends HttpServlet {
 
     protected Resource getResource(String name) throws ServletException, IOException {
 
-        if (ConfigurableResourceProvider.debug) System.out.println("Servlet PATH get: " + name);
+        if (ConfigurableResourceProvider.debug) logger.info("Servlet PATH get: " + name);
 
-        for (Object serviceObj : tracker.getServices()) {
-            VaadinResourceProvider service = (VaadinResourceProvider) serviceObj;
-            if (service.canHandle(name)) {
-                Resource res = service.getResource(name);
-                if (res != null && res.getUrl() != null) {
-                    return res;
-                }
+        long generation = providerGeneration + ConfigurableResourceProvider.getGeneration();
+        if (missing.isMissing(name, generation)) {
+            Metrics.inc(Metrics.NEGATIVE_HIT);
+            return null;
+        }
+
+        VaadinResourceProvider[] current = providers;
+        for (VaadinResourceProvider service : current) {
+            long start = System.nanoTime();
+            Resource res = service.resolve(name);
+            Metrics.time(Metrics.TIME_LOOKUP + service.getName(), start);
+            if (res != null && res.getUrl() != null) {
+                return res;
             }
         }
 
         if (name.endsWith(".css")) {
             String newName = name.substring(0, name.length() - 3) + "scss";
-            for (Object serviceObj : tracker.getServices()) {
-                VaadinResourceProvider service = (VaadinResourceProvider) serviceObj;
+            for (VaadinResourceProvider service : current) {
                 //				if (service.canHandle(newName)) {
                 Resource res = service.getResource(newName);
                 if (res != null && res.getUrl() != null) {
@@ -152,6 +452,7 @@ public class VaadinResourcesServlet extends HttpServlet {
             }
         }
 
+        missing.addMissing(name, generation);
         return null;
 
         //		String path = req.getPathInfo();
@@ -167,38 +468,122 @@ public class VaadinResourcesServlet extends HttpServlet {
         //		return res;
     }
 
-    @SuppressWarnings("deprecation")
     private Resource handleScss(Resource res, String scssFilename, String filename)
             throws IOException {
 
-        synchronized (SCSS_MUTEX) {
-            File cacheEntry = scssCache.get(scssFilename);
+        // cache hits are served without any lock
+        File cacheEntry = scssCache.get(scssFilename);
 
-            if (cacheEntry == null || !cacheEntry.exists()) {
-                try {
-                    cacheEntry = compileScssOnTheFly(filename, scssFilename, res);
-                    scssCache.put(scssFilename, cacheEntry);
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "Could not read persisted scss cache", e);
-                }
-            }
+        if (cacheEntry == null || !cacheEntry.exists()) {
+            cacheEntry = compileScss(res, scssFilename, filename);
+        }
+
+        if (cacheEntry == null) {
+            // compilation did not produce any result, but logged a message
+            return null;
+        }
+
+        // This is for development mode only so instruct the browser to
+        // never cache it
+        //            response.setHeader("Cache-Control", "no-cache");
+        //            final String mimetype = getService().getMimeType(filename);
+        //            writeResponse(response, mimetype, cacheEntry.getCss());
 
-            if (cacheEntry == null) {
-                // compilation did not produce any result, but logged a message
-                return null;
+        return new Resource(res.getBundle(), cacheEntry.toURI().toURL());
+    }
+
+    /**
+     * Compile the stylesheet. Concurrent requests for the same stylesheet share one compilation,
+     * requests for other stylesheets are not blocked by the in flight map. The compiler itself is
+     * not thread safe, so the compile step is serialized by SCSS_MUTEX.
+     */
+    private File compileScss(
+            final Resource res, final String scssFilename, final String filename) {
+
+        FutureTask<File> task =
+                new FutureTask<File>(
+                        new Callable<File>() {
+                            @Override
+                            public File call() throws Exception {
+                                // could be finished in the meantime
+                                File done = scssCache.get(scssFilename);
+                                if (done != null && done.exists()) return done;
+
+                                // reuse the persisted result if no dependency changed
+                                File stored = SCSS_STORE.lookup(scssFilename, contentHasher);
+                                if (stored != null) {
+                                    File css = getCssCacheFile(scssFilename);
+                                    Files.copy(
+                                            stored.toPath(),
+                                            css.toPath(),
+                                            StandardCopyOption.REPLACE_EXISTING);
+                                    scssCache.put(scssFilename, css);
+                                    Metrics.inc(Metrics.SCSS_REUSE);
+                                    logger.fine("Reuse compiled " + scssFilename);
+                                    return css;
+                                }
+
+                                long start = System.nanoTime();
+                                List<ScssCompileCache.Dependency> deps =
+                                        new ArrayList<ScssCompileCache.Dependency>();
+                                File css;
+                                synchronized (SCSS_MUTEX) {
+                                    css = compileScssOnTheFly(filename, scssFilename, res, deps);
+                                }
+                                long time = (System.nanoTime() - start) / 1000000;
+                                Metrics.inc(Metrics.SCSS_COMPILE);
+                                Metrics.time(Metrics.TIME_SCSS, start);
+                                scssCompileTimes.put(scssFilename, time);
+                                SCSS_STORE.store(scssFilename, css, deps);
+                                scssCache.put(scssFilename, css);
+                                logger.info("Compiled " + scssFilename + " in " + time + " ms");
+                                return css;
+                            }
+                        });
+
+        FutureTask<File> running = scssCompiling.putIfAbsent(scssFilename, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                scssCompiling.remove(scssFilename, task);
             }
+        }
 
-            // This is for development mode only so instruct the browser to
-            // never cache it
-            //            response.setHeader("Cache-Control", "no-cache");
-            //            final String mimetype = getService().getMimeType(filename);
-            //            writeResponse(response, mimetype, cacheEntry.getCss());
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Metrics.inc(Metrics.SCSS_ERROR);
+            logger.log(Level.WARNING, "Could not compile scss " + scssFilename, e.getCause());
+            return null;
+        }
+    }
 
-            return new Resource(res.getBundle(), cacheEntry.toURL());
+    @Override
+    public Map<String, Long> getCompileTimes() {
+        return Collections.unmodifiableMap(scssCompileTimes);
+    }
+
+    @Override
+    public boolean compile(String name) {
+        try {
+            Resource res = getResource(name);
+            return res != null && res.getUrl() != null;
+        } catch (ServletException | IOException e) {
+            logger.log(Level.WARNING, "Can't compile " + name, e);
+            return false;
         }
     }
 
-    private File compileScssOnTheFly(final String filename, final String scssFilename, Resource res)
+    private File compileScssOnTheFly(
+            final String filename,
+            final String scssFilename,
+            Resource res,
+            final List<ScssCompileCache.Dependency> deps)
             throws Exception {
 
         File cache = getScssCacheFile(scssFilename);
@@ -207,6 +592,9 @@ public class VaadinResourcesServlet extends HttpServlet {
         FileOutputStream fos = new FileOutputStream(cache);
         res.writeToStream(fos);
         fos.close();
+        deps.add(
+                new ScssCompileCache.Dependency(
+                        filename, ScssCompileCache.hash(cache), getBundleName(res)));
 
         //    	SassCompiler.main(new String[] { cache.getAbsolutePath(), css.getAbsolutePath() } );
 
@@ -229,6 +617,8 @@ public class VaadinResourcesServlet extends HttpServlet {
                             }
                             Resource r = getResource(identifier);
                             if (r == null || r.getUrl() == null) {
+                                // the css is stale if the candidate is added later
+                                deps.add(ScssCompileCache.Dependency.missing(identifier));
                                 // try the underscore ...
                                 p = identifier.lastIndexOf('/');
                                 if (p < 0) return null;
@@ -240,6 +630,7 @@ public class VaadinResourcesServlet extends HttpServlet {
                                 r = getResource(identifier);
                             }
                             if (r == null || r.getUrl() == null) {
+                                deps.add(ScssCompileCache.Dependency.missing(identifier));
                                 return null;
                             }
                             File c = getScssCacheFile(identifier);
@@ -247,6 +638,11 @@ public class VaadinResourcesServlet extends HttpServlet {
                             FileOutputStream fos = new FileOutputStream(c);
                             r.writeToStream(fos);
                             fos.close();
+                            deps.add(
+                                    new ScssCompileCache.Dependency(
+                                            identifier,
+                                            ScssCompileCache.hash(c),
+                                            getBundleName(r)));
 
                             return new InputSource(c.getAbsolutePath());
 
@@ -267,6 +663,18 @@ public class VaadinResourcesServlet extends HttpServlet {
         return css;
     }
 
+    /**
+     * Return the name of the bundle as used to register resources at the admin.
+     *
+     * @param res
+     * @return The name or null if there is no bundle
+     */
+    static String getBundleName(Resource res) {
+        if (res.getBundle() == null) return null;
+        String name = res.getBundle().getSymbolicName();
+        return name == null ? String.valueOf(res.getBundle().getBundleId()) : name;
+    }
+
     private String cleanupPath(String identifier) {
         while (true) {
             int p = identifier.indexOf("../");
@@ -285,24 +693,116 @@ public class VaadinResourcesServlet extends HttpServlet {
         scssFile = scssFile.replace(".", "_");
         scssFile = scssFile.replace("~", "_");
         scssFile = scssFile.replace("/", "_");
-        return new File("vaadincache/" + scssFile + ".scss");
+        return new File(CACHE_DIR, scssFile + ".scss");
     }
 
-    private static File getCssCacheFile(String scssFile) {
+    static File getCssCacheFile(String scssFile) {
         scssFile = scssFile.replace(".", "_");
         scssFile = scssFile.replace("~", "_");
         scssFile = scssFile.replace("/", "_");
-        return new File("vaadincache/" + scssFile + ".css");
+        return new File(CACHE_DIR, scssFile + ".css");
     }
 
     @Override
     protected void doHead(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
+        serve(req, resp, false);
+    }
 
-        Resource res = getResource(req.getPathInfo());
-        if (res == null) return;
+    /** The representation to be sent to the client. */
+    protected interface Content {
+
+        /**
+         * Return the length in bytes.
+         *
+         * @return The length or -1 if unknown
+         */
+        long getLength();
+
+        /**
+         * Write a part of the content.
+         *
+         * @param out
+         * @param position Start position
+         * @param count Number of bytes or -1 for all
+         * @throws IOException
+         */
+        void write(OutputStream out, long position, long count) throws IOException;
+    }
 
-        setMimeType(res, req, resp);
-        setLastModified(res, req, resp);
+    private static class BytesContent implements Content {
+
+        private final byte[] data;
+
+        BytesContent(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long getLength() {
+            return data.length;
+        }
+
+        @Override
+        public void write(OutputStream out, long position, long count) throws IOException {
+            if (count < 0) count = data.length - position;
+            out.write(data, (int) position, (int) count);
+        }
+    }
+
+    /** Content of an opened file, the length is fixed even if the file is replaced. */
+    private static class ChannelContent implements Content {
+
+        private final FileChannel channel;
+        private final long length;
+
+        ChannelContent(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void write(OutputStream out, long position, long count) throws IOException {
+            if (count < 0) count = length - position;
+            Resource.transfer(channel, position, count, out);
+        }
+    }
+
+    private static class ResourceContent implements Content {
+
+        private final Resource res;
+        private final long length;
+
+        ResourceContent(Resource res) {
+            this.res = res;
+            this.length = res.getContentLength();
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void write(OutputStream out, long position, long count) throws IOException {
+            File file = res.getFile();
+            if (file != null) {
+                if (count < 0) count = file.length() - position;
+                Resource.transfer(file, position, count, out);
+                return;
+            }
+            if (position == 0 && (count < 0 || count == length)) {
+                res.writeToStream(out);
+                return;
+            }
+            try (InputStream is = res.getUrl().openStream()) {
+                IOUtils.copyLarge(is, out, position, count);
+            }
+        }
     }
 }
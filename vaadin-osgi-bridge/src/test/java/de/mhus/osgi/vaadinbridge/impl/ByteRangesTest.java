@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ByteRangesTest {
+
+    @Test
+    public void testSingleRange() {
+        List<long[]> ranges = ByteRanges.parse("bytes=10-19", 100);
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[] {10, 19}, ranges.get(0));
+    }
+
+    @Test
+    public void testSuffixRange() {
+        List<long[]> ranges = ByteRanges.parse("bytes=-5", 100);
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[] {95, 99}, ranges.get(0));
+
+        // larger then the content
+        ranges = ByteRanges.parse("bytes=-500", 100);
+        assertArrayEquals(new long[] {0, 99}, ranges.get(0));
+    }
+
+    @Test
+    public void testOpenRange() {
+        List<long[]> ranges = ByteRanges.parse("bytes=90-", 100);
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new long[] {90, 99}, ranges.get(0));
+
+        // end behind the content
+        ranges = ByteRanges.parse("bytes=90-1000", 100);
+        assertArrayEquals(new long[] {90, 99}, ranges.get(0));
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        List<long[]> ranges = ByteRanges.parse("bytes=0-1, 5-6,-2", 100);
+        assertEquals(3, ranges.size());
+        assertArrayEquals(new long[] {0, 1}, ranges.get(0));
+        assertArrayEquals(new long[] {5, 6}, ranges.get(1));
+        assertArrayEquals(new long[] {98, 99}, ranges.get(2));
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        assertTrue(ByteRanges.parse("bytes=100-", 100).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=200-300", 100).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-0", 100).isEmpty());
+        assertTrue(ByteRanges.parse("bytes=-5", 0).isEmpty());
+        // only the satisfiable ranges are returned
+        assertEquals(1, ByteRanges.parse("bytes=200-300,0-0", 100).size());
+    }
+
+    @Test
+    public void testMalformed() {
+        assertNull(ByteRanges.parse(null, 100));
+        assertNull(ByteRanges.parse("", 100));
+        assertNull(ByteRanges.parse("items=0-1", 100));
+        assertNull(ByteRanges.parse("bytes=abc", 100));
+        assertNull(ByteRanges.parse("bytes=5", 100));
+        assertNull(ByteRanges.parse("bytes=9-1", 100));
+        assertNull(ByteRanges.parse("bytes=-", 100));
+        assertNull(ByteRanges.parse("bytes=0-1,x-2", 100));
+        assertNull(ByteRanges.parse("bytes=0-1", -1));
+    }
+
+    @Test
+    public void testTooManyRanges() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRanges.MAX_RANGES; i++)
+            header.append(',').append(i).append('-').append(i);
+        assertNull(ByteRanges.parse(header.toString(), 100));
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2019 Mike Hummel (mh@mhus.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.mhus.osgi.vaadinbridge.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.Bundle;
+
+import de.mhus.osgi.vaadinbridge.Resource;
+
+/** Range requests against a resource of a stand-in bundle. */
+public class VaadinResourcesServletTest {
+
+    private static final String PATH = "/themes/test/file.bin";
+    // 100 bytes: 0123456789 0123456789 ...
+    private static final String CONTENT;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) sb.append((char) ('0' + i % 10));
+        CONTENT = sb.toString();
+    }
+
+    @ClassRule public static TemporaryFolder tmp = new TemporaryFolder();
+
+    private File file;
+    private TestServlet servlet;
+
+    @BeforeClass
+    public static void setUpCache() throws IOException {
+        // before the servlet class is loaded, it creates the cache directories
+        System.setProperty(
+                VaadinResourcesServlet.CACHE_DIR_PROPERTY,
+                tmp.newFolder("vaadincache").getPath());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("vaadinbridge", ".bin");
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.ISO_8859_1));
+        servlet = new TestServlet(new Resource(createBundle(), file.toURI().toURL()));
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testFullContent() throws Exception {
+        TestResponse resp = get(new HashMap<String, String>());
+        assertEquals(200, resp.status);
+        assertEquals("100", resp.headers.get("Content-Length"));
+        assertEquals("bytes", resp.headers.get("Accept-Ranges"));
+        assertEquals(CONTENT, resp.body());
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        TestResponse resp = get(range("bytes=-5"));
+        assertEquals(206, resp.status);
+        assertEquals("bytes 95-99/100", resp.headers.get("Content-Range"));
+        assertEquals("5", resp.headers.get("Content-Length"));
+        assertEquals("56789", resp.body());
+    }
+
+    @Test
+    public void testOpenRange() throws Exception {
+        TestResponse resp = get(range("bytes=90-"));
+        assertEquals(206, resp.status);
+        assertEquals("bytes 90-99/100", resp.headers.get("Content-Range"));
+        assertEquals("0123456789", resp.body());
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        TestResponse resp = get(range("bytes=200-300"));
+        assertEquals(416, resp.status);
+        assertEquals("bytes */100", resp.headers.get("Content-Range"));
+        assertEquals("", resp.body());
+    }
+
+    @Test
+    public void testMalformedRangeIsIgnored() throws Exception {
+        TestResponse resp = get(range("bytes=abc"));
+        assertEquals(200, resp.status);
+        assertNull(resp.headers.get("Content-Range"));
+        assertEquals(CONTENT, resp.body());
+    }
+
+    @Test
+    public void testIfRangeMismatch() throws Exception {
+        Map<String, String> headers = range("bytes=0-9");
+        headers.put("If-Range", "\"outdated\"");
+        TestResponse resp = get(headers);
+        assertEquals(200, resp.status);
+        assertNull(resp.headers.get("Content-Range"));
+        assertEquals(CONTENT, resp.body());
+    }
+
+    @Test
+    public void testIfRangeMatch() throws Exception {
+        String etag = get(new HashMap<String, String>()).headers.get("ETag");
+        Map<String, String> headers = range("bytes=0-9");
+        headers.put("If-Range", etag);
+        TestResponse resp = get(headers);
+        assertEquals(206, resp.status);
+        assertEquals("0123456789", resp.body());
+    }
+
+    @Test
+    public void testMultipleRanges() throws Exception {
+        TestResponse resp = get(range("bytes=0-1,15-16"));
+        assertEquals(206, resp.status);
+        String type = resp.contentType;
+        assertTrue(type.startsWith("multipart/byteranges; boundary="));
+        String boundary = type.substring(type.indexOf('=') + 1);
+        String expected =
+                "\r\n--"
+                        + boundary
+                        + "\r\nContent-Type: application/octet-stream"
+                        + "\r\nContent-Range: bytes 0-1/100\r\n\r\n01"
+                        + "\r\n--"
+                        + boundary
+                        + "\r\nContent-Type: application/octet-stream"
+                        + "\r\nContent-Range: bytes 15-16/100\r\n\r\n56"
+                        + "\r\n--"
+                        + boundary
+                        + "--\r\n";
+        assertEquals(expected, resp.body());
+        assertEquals(String.valueOf(expected.length()), resp.headers.get("Content-Length"));
+    }
+
+    private static Map<String, String> range(String value) {
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Range", value);
+        return headers;
+    }
+
+    private TestResponse get(Map<String, String> headers) throws Exception {
+        TestResponse resp = new TestResponse();
+        servlet.serve(createRequest(headers), resp.proxy, true);
+        return resp;
+    }
+
+    private static Bundle createBundle() {
+        return (Bundle)
+                Proxy.newProxyInstance(
+                        Bundle.class.getClassLoader(),
+                        new Class<?>[] {Bundle.class},
+                        new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                switch (method.getName()) {
+                                    case "getBundleId":
+                                        return 4711L;
+                                    case "getSymbolicName":
+                                        return "test.bundle";
+                                    case "getLastModified":
+                                        return 1500000000000L;
+                                    case "hashCode":
+                                        return 4711;
+                                    case "equals":
+                                        return proxy == args[0];
+                                    default:
+                                        return null;
+                                }
+                            }
+                        });
+    }
+
+    private static HttpServletRequest createRequest(final Map<String, String> headers) {
+        return (HttpServletRequest)
+                Proxy.newProxyInstance(
+                        HttpServletRequest.class.getClassLoader(),
+                        new Class<?>[] {HttpServletRequest.class},
+                        new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                switch (method.getName()) {
+                                    case "getPathInfo":
+                                        return PATH;
+                                    case "getMethod":
+                                        return "GET";
+                                    case "getHeader":
+                                        return headers.get(args[0]);
+                                    case "getDateHeader":
+                                        return -1L;
+                                    default:
+                                        return null;
+                                }
+                            }
+                        });
+    }
+
+    private static class TestResponse {
+
+        int status = 200;
+        String contentType;
+        final HashMap<String, String> headers = new HashMap<String, String>();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpServletResponse proxy =
+                (HttpServletResponse)
+                        Proxy.newProxyInstance(
+                                HttpServletResponse.class.getClassLoader(),
+                                new Class<?>[] {HttpServletResponse.class},
+                                new InvocationHandler() {
+                                    @Override
+                                    public Object invoke(
+                                            Object proxy, Method method, Object[] args) {
+                                        switch (method.getName()) {
+                                            case "setStatus":
+                                                status = (Integer) args[0];
+                                                return null;
+                                            case "setHeader":
+                                                headers.put((String) args[0], (String) args[1]);
+                                                return null;
+                                            case "setContentType":
+                                                contentType = (String) args[0];
+                                                return null;
+                                            case "getContentType":
+                                                return contentType;
+                                            case "getOutputStream":
+                                                return new TestOutputStream(out);
+                                            case "isCommitted":
+                                                return false;
+                                            default:
+                                                return null;
+                                        }
+                                    }
+                                });
+
+        String body() {
+            return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static class TestOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream out;
+
+        TestOutputStream(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            out.write(b);
+        }
+
+        public boolean isReady() {
+            return true;
+        }
+
+        public void setWriteListener(WriteListener writeListener) {}
+    }
+
+    private static class TestServlet extends VaadinResourcesServlet {
+
+        private static final long serialVersionUID = 1L;
+        private final Resource resource;
+
+        TestServlet(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        protected Resource getResource(String name) {
+            return PATH.equals(name) ? resource : null;
+        }
+
+        @Override
+        protected void setMimeType(
+                Resource res, HttpServletRequest req, HttpServletResponse resp) {
+            resp.setContentType("application/octet-stream");
+        }
+    }
+}